@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.diorite.chat.ChatColor;
+import org.diorite.chat.ChatMessage;
+import org.diorite.chat.CompiledParser;
+import org.diorite.chat.Parser;
+import org.diorite.chat.ParserCache;
+import org.diorite.chat.ParserSettings;
+
+/**
+ * Benchmarks of chat markup parser, single operation parses whole set of chat lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChatParserBenchmark
+{
+    static final String[] PLAIN     = {
+            "hi",
+            "Hello everyone, welcome back to the server!",
+            "anyone want to trade 32 iron for some redstone? pm me",
+            "brb dinner",
+            "Server will restart in 5 minutes, please find a safe place to log out.",
+            "lol that creeper blew up half of my base again, time to rebuild"
+    };
+    static final String[] FORMATTED = {
+            "&aWelcome &e*GotoFinal*&a to the _survival_ server!",
+            "&7[&cAdmin&7] &fPlease /read the &6rules&f before playing.",
+            "&6&lVOTE &8» &7You received &e*5 diamonds*&7 for voting!",
+            "~old price~ &anew price: &e100$ &7(/limited offer/)",
+            "&c%secret% &7message with &bcolors &ain &dmany &eplaces",
+            "&8[&2Guild&8] &aNotch&7: _anyone_ *online*? need help at &e-120 64 300"
+    };
+    static final String[] LINKS     = {
+            "Check out our website at www.diorite.org for more info",
+            "Vote for us on https://minecraft-server-list.com/server/12345/vote/ and get rewards!",
+            "join discord: https://discord.gg/abcDEF123 or teamspeak ts.example.net:9987",
+            "map is available at http://map.example.com:8123/?worldname=world&zoom=4",
+            "no links in this message at all, just plain text",
+            "download pack from example.org/packs/latest.zip then run /reload"
+    };
+    static final String[] EVENTS    = {
+            "[Click here](!/spawn) to teleport to spawn",
+            "&aUse [this command](/home set) to set your home or [visit](https://diorite.org) our page",
+            "Go to [page 2](2) of the guide, or [copy name](?GotoFinal) into chat",
+            "[*&6Legendary sword*](<item:{id:\"minecraft:diamond_sword\",Count:1b}>) for sale!",
+            "[Achievement get!](<achievement:openInventory>) &7[/details/](!/stats)",
+            "[&cRules](!/rules) &8| [&aShop](https://shop.example.com) &8| [&bHelp](/help )"
+    };
+
+    @Param({"plain", "formatted", "links", "events"})
+    public String lines;
+
+    @Param({"all", "safe", "noOptimizer"})
+    public String settings;
+
+    private String[]       input;
+    private String[]       legacyInput;
+    private ParserSettings parserSettings;
+    private CompiledParser compiledParser;
+    private ParserCache    parserCache;
+
+    @Setup
+    public void setup()
+    {
+        switch (this.lines)
+        {
+            case "plain":
+                this.input = PLAIN;
+                break;
+            case "formatted":
+                this.input = FORMATTED;
+                break;
+            case "links":
+                this.input = LINKS;
+                break;
+            case "events":
+                this.input = EVENTS;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown lines: " + this.lines);
+        }
+        this.legacyInput = new String[this.input.length];
+        for (int i = 0; i < this.input.length; i++)
+        {
+            this.legacyInput[i] = ChatColor.translateAlternateColorCodesInString(this.input[i]);
+        }
+        switch (this.settings)
+        {
+            case "all":
+                this.parserSettings = ParserSettings.ALL_ALLOWED;
+                break;
+            case "safe":
+                this.parserSettings = ParserSettings.SAFE;
+                break;
+            case "noOptimizer":
+                this.parserSettings = ParserSettings.builder().withoutOptimizer().build();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown settings: " + this.settings);
+        }
+        this.compiledParser = this.parserSettings.getCompiledParser();
+        this.parserCache = ParserCache.bySize(1024);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole)
+    {
+        for (String line : this.input)
+        {
+            blackhole.consume(new Parser(line, this.parserSettings).parse());
+        }
+    }
+
+    @Benchmark
+    public void parseCompiled(Blackhole blackhole)
+    {
+        for (String line : this.input)
+        {
+            blackhole.consume(this.compiledParser.parse(line));
+        }
+    }
+
+    @Benchmark
+    public void parseCached(Blackhole blackhole)
+    {
+        for (String line : this.input)
+        {
+            blackhole.consume(this.parserCache.parse(line, this.parserSettings));
+        }
+    }
+
+    @Benchmark
+    public void fromLegacy(Blackhole blackhole)
+    {
+        // this same lines with '&' codes changed to legacy color codes, rest of markup is just a text for legacy reader.
+        for (String line : this.legacyInput)
+        {
+            blackhole.consume(ChatMessage.fromLegacy(line, true).toJson());
+        }
+    }
+}
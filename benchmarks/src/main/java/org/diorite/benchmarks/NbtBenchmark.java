@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.diorite.nbt.NbtInputStream;
+import org.diorite.nbt.NbtLimiter;
+import org.diorite.nbt.NbtOutputStream;
+import org.diorite.nbt.NbtSerialization;
+import org.diorite.nbt.NbtTag;
+import org.diorite.nbt.NbtTagCompound;
+import org.diorite.nbt.NbtTagList;
+
+/**
+ * Benchmarks of nbt binary read/write and mojangson round-trips over generated player-like compounds. <br>
+ * Compounds are generated from fixed seed, so every run use exactly this same data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NbtBenchmark
+{
+    private static final long SEED = 0x5EED_D10L;
+
+    /**
+     * Amount of item entries in generated inventory list.
+     */
+    @Param({"4", "36", "256"})
+    public int items;
+
+    private NbtTagCompound        compound;
+    private byte[]                bytes;
+    private String                mojangson;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        this.compound = generate(new Random(SEED), this.items);
+        this.output = new ByteArrayOutputStream(4096);
+        this.bytes = this.writeBytes();
+        this.mojangson = this.compound.toString();
+    }
+
+    static NbtTagCompound generate(Random random, int items)
+    {
+        NbtTagCompound root = new NbtTagCompound("player");
+        root.setString("Name", "Player" + random.nextInt(100_000));
+        root.setLong("UUIDMost", random.nextLong());
+        root.setLong("UUIDLeast", random.nextLong());
+        root.setInt("XpLevel", random.nextInt(100));
+        root.setFloat("Health", random.nextFloat() * 20);
+        root.setShort("Fire", random.nextInt(Short.MAX_VALUE));
+        root.setByte("OnGround", random.nextInt(2));
+        root.setDouble("Pos.x", random.nextDouble() * 10_000);
+        root.setDouble("Pos.y", random.nextDouble() * 256);
+        root.setDouble("Pos.z", random.nextDouble() * 10_000);
+        int[] intArray = new int[16];
+        for (int i = 0; i < intArray.length; i++)
+        {
+            intArray[i] = random.nextInt();
+        }
+        root.setIntArray("Seen", intArray);
+        byte[] byteArray = new byte[64];
+        random.nextBytes(byteArray);
+        root.setByteArray("Data", byteArray);
+
+        NbtTagList inventory = new NbtTagList("Inventory", items);
+        for (int i = 0; i < items; i++)
+        {
+            NbtTagCompound item = new NbtTagCompound();
+            item.setByte("Slot", i);
+            item.setString("id", "minecraft:item_" + random.nextInt(400));
+            item.setByte("Count", 1 + random.nextInt(64));
+            item.setShort("Damage", random.nextInt(1500));
+            if (random.nextBoolean())
+            {
+                item.setString("tag.display.Name", "\"Item\" no. " + i);
+                item.setInt("tag.HideFlags", random.nextInt(64));
+            }
+            inventory.addTag(item);
+        }
+        root.setTag("Inventory", inventory);
+        return root;
+    }
+
+    private byte[] writeBytes() throws IOException
+    {
+        this.output.reset();
+        new NbtOutputStream(this.output).write(this.compound);
+        return this.output.toByteArray();
+    }
+
+    @Benchmark
+    public int write() throws IOException
+    {
+        this.output.reset();
+        new NbtOutputStream(this.output).write(this.compound);
+        return this.output.size();
+    }
+
+    @Benchmark
+    public NbtTag read() throws IOException
+    {
+        return new NbtInputStream(new ByteArrayInputStream(this.bytes)).readTag(NbtLimiter.getUnlimited());
+    }
+
+    @Benchmark
+    public NbtTag binaryRoundTrip() throws IOException
+    {
+        return new NbtInputStream(new ByteArrayInputStream(this.writeBytes())).readTag(NbtLimiter.getUnlimited());
+    }
+
+    @Benchmark
+    public String toMojangson()
+    {
+        return this.compound.toString();
+    }
+
+    @Benchmark
+    public NbtTag fromMojangson()
+    {
+        return NbtSerialization.fromMojangson(this.mojangson, false);
+    }
+
+    @Benchmark
+    public NbtTag mojangsonRoundTrip()
+    {
+        return NbtSerialization.fromMojangson(this.compound.toString(), false);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.command.parser;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.diorite.command.Argument;
+import org.diorite.command.parser.basic.FixedArrayParser;
+import org.diorite.command.parser.basic.IntegerParser;
+import org.diorite.command.parser.basic.MapParser;
+import org.diorite.command.parser.basic.StringParser;
+import org.diorite.commons.ParserContext;
+
+/**
+ * Benchmarks of typed command argument parsers. <br>
+ * This class is placed in parser package to create {@link CommandParserContext} directly, as there is no public {@link ParsersManager} in this library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CommandArgumentParserBenchmark
+{
+    static final String INTEGER      = "-1234567";
+    static final String HEX_INTEGER  = "0x7fA0c3";
+    static final String STRING       = "simple_word";
+    static final String QUOTED       = "\"quoted string with \\\"escaped\\\" quotes\"";
+    static final String MAP          = "{diamond: 64, iron_ingot: 32, gold_ingot: 16, emerald: 8}";
+    static final String FIXED_ARRAY  = "[1, 2, 3, 4, 5, 6, 7, 8]";
+    static final String COMMAND_LINE = "GotoFinal 64 {sharpness: 5, unbreaking: 3} [10, 64, -300]";
+
+    private final IntegerParser                 integerParser = IntegerParser.DECIMAL;
+    private final StringParser                  stringParser  = new StringParser();
+    private final MapParser<String, Integer>    mapParser     = new MapParser<>(this.stringParser, this.integerParser);
+    private final FixedArrayParser<Integer>     arrayParser   = new FixedArrayParser<>(this.integerParser, 8);
+    private final List<? extends Argument<?>>   arguments     =
+            Arrays.asList(argument(this.stringParser), argument(this.integerParser), argument(this.mapParser),
+                          argument(new FixedArrayParser<>(this.integerParser, 3)));
+
+    static <T> Argument<T> argument(TypeParser<T> parser)
+    {
+        return (context, endConsumer) ->
+        {
+            @SuppressWarnings("unchecked")
+            ArgumentParseResult<T> result = (ArgumentParseResult<T>) parser.checkAndParse(context, TypeParser.SPACE_PREDICATE);
+            if (result.isSuccess())
+            {
+                endConsumer.accept(result.getResult());
+            }
+            return result;
+        };
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends Integer> integer()
+    {
+        return this.integerParser.checkAndParse(new ParserContext(INTEGER), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends Integer> hexInteger()
+    {
+        return this.integerParser.checkAndParse(new ParserContext(HEX_INTEGER), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends String> string()
+    {
+        return this.stringParser.checkAndParse(new ParserContext(STRING), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends String> quotedString()
+    {
+        return this.stringParser.checkAndParse(new ParserContext(QUOTED), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends Map<String, Integer>> map()
+    {
+        return this.mapParser.checkAndParse(new ParserContext(MAP), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ArgumentParseResult<? extends Collection<Integer>> fixedArray()
+    {
+        return this.arrayParser.checkAndParse(new ParserContext(FIXED_ARRAY), TypeParser.SPACE_PREDICATE);
+    }
+
+    @Benchmark
+    public ParserResult commandLine()
+    {
+        return new CommandParserContext(COMMAND_LINE, this.arguments).parse();
+    }
+}
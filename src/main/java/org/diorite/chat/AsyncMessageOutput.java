@@ -0,0 +1,333 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Message output that only queues messages on thread that sends them, filters and serialization are done later by worker on given executor.
+ * <br>
+ * Each output has own bounded queue, worker processes at most {@link #getBatchSize()} messages at once and then schedules itself again, so one
+ * busy receiver does not block others. When receiver is too slow and queue is full, new messages are handled by {@link OverflowPolicy}. <br>
+ * Messages of single output are always delivered in order they were queued, except messages coalesced by {@link OverflowPolicy#COALESCE}. <br>
+ * If executor rejects worker, exception is thrown from {@link #sendMessage(ChatMessageType, ChatMessage)}, but message stays in queue and
+ * is processed once worker is scheduled by next sent message.
+ */
+public class AsyncMessageOutput implements MessageOutput
+{
+    private static final ChatMessageType[] TYPES = ChatMessageType.values();
+
+    private final              Sink                              sink;
+    private final              ChatMessageFormat                 format;
+    private final              Executor                          executor;
+    private final              OverflowPolicy                    overflowPolicy;
+    private final              int                               batchSize;
+    private final @Nullable    ChatMetrics                       metrics;
+    private final              List<UnaryOperator<ChatMessage>>  filters   = new CopyOnWriteArrayList<>();
+    private final              MessageRing                       ring;
+    // newest message of each type that did not fit in queue, used by COALESCE policy.
+    private final              AtomicReferenceArray<ChatMessage> coalesced = new AtomicReferenceArray<>(TYPES.length);
+    private final              AtomicBoolean                     scheduled = new AtomicBoolean();
+    private final              LongAdder                         dropped   = new LongAdder();
+    private volatile @Nullable Locale                            preferredLocale;
+
+    /**
+     * Construct new asynchronous message output.
+     *
+     * @param sink
+     *         receiver of serialized messages, invoked by worker thread.
+     * @param format
+     *         format used to serialize messages.
+     * @param executor
+     *         executor used to run worker.
+     * @param capacity
+     *         maximum amount of queued messages, rounded up to power of two.
+     * @param batchSize
+     *         maximum amount of messages processed by single run of worker.
+     * @param overflowPolicy
+     *         policy used when queue is full.
+     * @param metrics
+     *         metrics to record time of filters and serialization, may be null.
+     */
+    public AsyncMessageOutput(Sink sink, ChatMessageFormat format, Executor executor, int capacity, int batchSize, OverflowPolicy overflowPolicy,
+                              @Nullable ChatMetrics metrics)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.sink = sink;
+        this.format = format;
+        this.executor = executor;
+        this.ring = new MessageRing(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns maximum amount of queued messages.
+     *
+     * @return capacity of queue.
+     */
+    public int getCapacity()
+    {
+        return this.ring.capacity();
+    }
+
+    /**
+     * Returns maximum amount of messages processed by single run of worker.
+     *
+     * @return size of batch.
+     */
+    public int getBatchSize()
+    {
+        return this.batchSize;
+    }
+
+    /**
+     * Returns policy used when queue is full.
+     *
+     * @return overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Returns approximate amount of messages waiting in queue.
+     *
+     * @return amount of queued messages.
+     */
+    public int getPendingCount()
+    {
+        return this.ring.size();
+    }
+
+    /**
+     * Returns amount of messages dropped or replaced by newer message because queue was full.
+     *
+     * @return amount of dropped messages.
+     */
+    public long getDroppedCount()
+    {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public void addFilter(UnaryOperator<ChatMessage> filter)
+    {
+        this.filters.add(filter);
+    }
+
+    @Override
+    public boolean removeFilter(Object filter)
+    {
+        return this.filters.remove(filter);
+    }
+
+    @Override
+    public void sendMessage(ChatMessageType type, ChatMessage component)
+    {
+        // once message of this type is waiting for queue to drain, newer messages of this type must wait after it, so they are coalesced too.
+        boolean coalesce = (this.overflowPolicy == OverflowPolicy.COALESCE) && (this.coalesced.get(type.ordinal()) != null);
+        if (coalesce || ! this.ring.offer(type, component))
+        {
+            if (this.overflowPolicy == OverflowPolicy.DROP_NEWEST)
+            {
+                this.dropped.increment();
+                return;
+            }
+            if (this.coalesced.getAndSet(type.ordinal(), component) != null)
+            {
+                this.dropped.increment();
+            }
+        }
+        this.schedule();
+    }
+
+    @Nullable
+    @Override
+    public Locale getPreferredLocale()
+    {
+        return this.preferredLocale;
+    }
+
+    @Override
+    public void setPreferredLocale(@Nullable Locale locale)
+    {
+        this.preferredLocale = locale;
+    }
+
+    private void schedule()
+    {
+        if (this.scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                this.executor.execute(this::drain);
+            }
+            catch (RuntimeException e)
+            {
+                // otherwise worker would be never scheduled again.
+                this.scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private boolean hasPending()
+    {
+        if (this.ring.peekType() != null)
+        {
+            return true;
+        }
+        // slot is claimed but not yet published, producer schedules worker after publishing it, so there is no need to spin here.
+        if (! this.ring.isEmpty())
+        {
+            return false;
+        }
+        for (int i = 0; i < TYPES.length; i++)
+        {
+            if (this.coalesced.get(i) != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain()
+    {
+        try
+        {
+            int processed = 0;
+            ChatMessageType type;
+            while ((processed < this.batchSize) && ((type = this.ring.peekType()) != null))
+            {
+                this.process(type, this.ring.poll());
+                processed++;
+            }
+            // coalesced message is newer than every queued message of its type, as newer messages of that type are coalesced too, so they are
+            // only sent once queue is empty.
+            if (this.ring.isEmpty())
+            {
+                for (int i = 0; i < TYPES.length; i++)
+                {
+                    ChatMessage message = this.coalesced.getAndSet(i, null);
+                    if (message != null)
+                    {
+                        this.process(TYPES[i], message);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.scheduled.set(false);
+            // messages queued after last check would not schedule worker while it was still running.
+            if (this.hasPending())
+            {
+                this.schedule();
+            }
+        }
+    }
+
+    private void process(ChatMessageType type, ChatMessage message)
+    {
+        ChatMessage filtered = this.filters.isEmpty() ? message : MessageOutput.applyFilters(this.filters, type, message, this.metrics);
+        if (filtered == null)
+        {
+            return;
+        }
+        byte[] payload;
+        if (this.metrics == null)
+        {
+            payload = this.format.serialize(filtered);
+        }
+        else
+        {
+            long start = System.nanoTime();
+            payload = this.format.serialize(filtered);
+            this.metrics.record(ChatMetrics.Stage.SERIALIZE, type, System.nanoTime() - start, payload.length);
+        }
+        this.sink.send(type, filtered, payload);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AsyncMessageOutput{format=" + this.format + ", pending=" + this.ring.size() + ", dropped=" + this.dropped.sum() + "}";
+    }
+
+    /**
+     * Receiver of messages processed by {@link AsyncMessageOutput}, usually connection of player.
+     */
+    @FunctionalInterface
+    public interface Sink
+    {
+        /**
+         * Send already filtered and serialized message, invoked by worker thread.
+         *
+         * @param type
+         *         type of message.
+         * @param message
+         *         filtered message.
+         * @param payload
+         *         message serialized using format of output.
+         */
+        void send(ChatMessageType type, ChatMessage message, byte[] payload);
+    }
+
+    /**
+     * Policy of handling messages sent when queue of output is full.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * New message is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * Only newest message of each type is kept, and is sent after all queued messages. Until it is sent, next messages of this same type
+         * replace it instead of being queued, so newest message is always delivered last. Useful for messages that are replaced by next one
+         * anyway, like action bar.
+         */
+        COALESCE
+    }
+}
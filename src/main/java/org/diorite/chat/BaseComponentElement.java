@@ -26,12 +26,11 @@ package org.diorite.chat;
 
 import javax.annotation.Nullable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
 
 import org.diorite.KeyBind;
 import org.diorite.chat.ChatMessageEvent.Action;
@@ -39,6 +38,28 @@ import org.diorite.chat.ChatMessageEvent.Action.ActionType;
 
 abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT, EVENT, INSERT>, EVENT extends ChatMessageEvent, INSERT extends EVENT>
 {
+    // resolved style is packed into single int: format flags and ordinal of color + 1 (0 if there is no color).
+    static final int STYLE_BOLD          = 1;
+    static final int STYLE_ITALIC        = 1 << 1;
+    static final int STYLE_UNDERLINED    = 1 << 2;
+    static final int STYLE_STRIKETHROUGH = 1 << 3;
+    static final int STYLE_OBFUSCATED    = 1 << 4;
+    static final int STYLE_COLOR_SHIFT   = 5;
+    static final int STYLE_COLOR_MASK    = 0x1F << STYLE_COLOR_SHIFT;
+    static final int STYLE_UNRESOLVED    = - 1;
+
+    // own format is packed into single int, each flag use 2 bits: first one is set if flag is defined, second one is value of flag, color is
+    // stored as ordinal + 1 (0 if there is no color).
+    static final int FORMAT_BOLD          = 0;
+    static final int FORMAT_ITALIC        = 2;
+    static final int FORMAT_UNDERLINED    = 4;
+    static final int FORMAT_STRIKETHROUGH = 6;
+    static final int FORMAT_OBFUSCATED    = 8;
+    static final int FORMAT_COLOR_SHIFT   = 10;
+    static final int FORMAT_COLOR_MASK    = 0x1F << FORMAT_COLOR_SHIFT;
+
+    private static final ChatColor[] COLORS = ChatColor.values();
+
     @Nullable ELEMENT parent;
 
     @Nullable String        text;
@@ -62,15 +83,222 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
     @Nullable EVENT  hoverEvent;
     @Nullable EVENT  clickEvent;
 
+    int resolvedStyle = STYLE_UNRESOLVED;
+
     /**
      * Changes structure of component to reduce amount of nodes.
      */
     public ELEMENT optimize()
     {
         BaseComponentOptimizer.optimize(this.getThis());
+        this.invalidateTree();
+        this.invalidate();
         return this.getThis();
     }
 
+    /**
+     * Called after any change of this component, so implementations can drop cached data. <br>
+     * Changes made directly to lists returned by {@link #getExtra()} and {@link #getWith()} are not detected.
+     */
+    void invalidate() {}
+
+    /**
+     * Returns style of this component with all values inherited from parents, packed into single int, see STYLE_ constants. <br>
+     * Style is computed once and cached in each node, so when whole tree is traversed from top, each node is resolved in constant time.
+     *
+     * @return resolved style of this component.
+     */
+    int getResolvedStyle()
+    {
+        int style = this.resolvedStyle;
+        if (style == STYLE_UNRESOLVED)
+        {
+            style = this.applyStyle((this.parent == null) ? 0 : this.parent.getResolvedStyle());
+            this.resolvedStyle = style;
+        }
+        return style;
+    }
+
+    /**
+     * Apply own style of this component to given inherited style.
+     *
+     * @param inherited
+     *         style of parent.
+     *
+     * @return style of this component.
+     */
+    int applyStyle(int inherited)
+    {
+        int style = inherited;
+        if (this.bold != null)
+        {
+            style = this.bold ? (style | STYLE_BOLD) : (style & ~ STYLE_BOLD);
+        }
+        if (this.italic != null)
+        {
+            style = this.italic ? (style | STYLE_ITALIC) : (style & ~ STYLE_ITALIC);
+        }
+        if (this.underlined != null)
+        {
+            style = this.underlined ? (style | STYLE_UNDERLINED) : (style & ~ STYLE_UNDERLINED);
+        }
+        if (this.strikethrough != null)
+        {
+            style = this.strikethrough ? (style | STYLE_STRIKETHROUGH) : (style & ~ STYLE_STRIKETHROUGH);
+        }
+        if (this.obfuscated != null)
+        {
+            style = this.obfuscated ? (style | STYLE_OBFUSCATED) : (style & ~ STYLE_OBFUSCATED);
+        }
+        if (this.color != null)
+        {
+            style = (style & ~ STYLE_COLOR_MASK) | ((this.color.ordinal() + 1) << STYLE_COLOR_SHIFT);
+        }
+        return style;
+    }
+
+    /**
+     * Returns color stored in resolved style.
+     *
+     * @param style
+     *         resolved style.
+     *
+     * @return color stored in given style.
+     */
+    @Nullable
+    static ChatColor getColor(int style)
+    {
+        int color = (style & STYLE_COLOR_MASK) >>> STYLE_COLOR_SHIFT;
+        return (color == 0) ? null : COLORS[color - 1];
+    }
+
+    /**
+     * Returns own format of this component (without values inherited from parents) packed into single int, see FORMAT_ constants.
+     *
+     * @return own format of this component.
+     */
+    int getFormat()
+    {
+        int format = format(this.bold, FORMAT_BOLD) | format(this.italic, FORMAT_ITALIC) | format(this.underlined, FORMAT_UNDERLINED) |
+                     format(this.strikethrough, FORMAT_STRIKETHROUGH) | format(this.obfuscated, FORMAT_OBFUSCATED);
+        if (this.color != null)
+        {
+            format |= (this.color.ordinal() + 1) << FORMAT_COLOR_SHIFT;
+        }
+        return format;
+    }
+
+    /**
+     * Sets own format of this component from format packed by {@link #getFormat()}.
+     *
+     * @param format
+     *         packed format.
+     */
+    void setFormat(int format)
+    {
+        this.bold = getFlag(format, FORMAT_BOLD);
+        this.italic = getFlag(format, FORMAT_ITALIC);
+        this.underlined = getFlag(format, FORMAT_UNDERLINED);
+        this.strikethrough = getFlag(format, FORMAT_STRIKETHROUGH);
+        this.obfuscated = getFlag(format, FORMAT_OBFUSCATED);
+        this.color = getFormatColor(format);
+        this.invalidateStyle();
+        this.invalidate();
+    }
+
+    /**
+     * Returns color stored in packed format.
+     *
+     * @param format
+     *         packed format.
+     *
+     * @return color stored in given format.
+     */
+    @Nullable
+    static ChatColor getFormatColor(int format)
+    {
+        int color = (format & FORMAT_COLOR_MASK) >>> FORMAT_COLOR_SHIFT;
+        return (color == 0) ? null : COLORS[color - 1];
+    }
+
+    /**
+     * Returns bits of given flag for packed format.
+     *
+     * @param value
+     *         value of flag.
+     * @param shift
+     *         FORMAT_ constant of flag.
+     *
+     * @return bits of flag, 0 if flag isn't defined.
+     */
+    static int format(@Nullable Boolean value, int shift)
+    {
+        if (value == null)
+        {
+            return 0;
+        }
+        return (value ? 0b11 : 0b01) << shift;
+    }
+
+    /**
+     * Returns value of given flag stored in packed format.
+     *
+     * @param format
+     *         packed format.
+     * @param shift
+     *         FORMAT_ constant of flag.
+     *
+     * @return value of flag, null if flag isn't defined.
+     */
+    @Nullable
+    static Boolean getFlag(int format, int shift)
+    {
+        switch ((format >>> shift) & 0b11)
+        {
+            case 0b11:
+                return Boolean.TRUE;
+            case 0b01:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Drops resolved style of this component and its children, children of component without resolved style can't have resolved style too.
+     */
+    void invalidateStyle()
+    {
+        if (this.resolvedStyle == STYLE_UNRESOLVED)
+        {
+            return;
+        }
+        this.resolvedStyle = STYLE_UNRESOLVED;
+        if (this.extra != null)
+        {
+            for (ELEMENT element : this.extra)
+            {
+                element.invalidateStyle();
+            }
+        }
+    }
+
+    /**
+     * Drops resolved style and other cached data of this component and all its children, used after changes that might move nodes
+     * without updating them.
+     */
+    void invalidateTree()
+    {
+        this.resolvedStyle = STYLE_UNRESOLVED;
+        if (this.extra != null)
+        {
+            for (ELEMENT element : this.extra)
+            {
+                element.invalidateTree();
+            }
+        }
+    }
+
     public ELEMENT getRoot()
     {
         ELEMENT other = this.getThis();
@@ -90,6 +318,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
     public ELEMENT setParent(@Nullable ELEMENT parent)
     {
         this.parent = parent;
+        this.invalidateStyle();
         return this.getThis();
     }
 
@@ -138,6 +367,24 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
         return true;
     }
 
+    /**
+     * Returns amount of nodes in tree of this component, including this component, arguments of translation are not counted.
+     *
+     * @return amount of nodes in tree of this component.
+     */
+    int countNodes()
+    {
+        int nodes = 1;
+        if (this.extra != null)
+        {
+            for (ELEMENT element : this.extra)
+            {
+                nodes += element.countNodes();
+            }
+        }
+        return nodes;
+    }
+
     /**
      * Returns true if this node have any formatting settings.
      *
@@ -166,6 +413,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             this.keyBind = null;
             this.score = null;
         }
+        this.invalidate();
         return this.getThis();
     }
 
@@ -178,6 +426,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
     public ELEMENT setExtra(@Nullable List<ELEMENT> extra)
     {
         this.extra = extra;
+        this.invalidate();
         return this.getThis();
     }
 
@@ -190,6 +439,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
         }
         this.extra.add(element);
         element.setParent((ELEMENT) this);
+        this.invalidate();
         return this.getThis();
     }
 
@@ -210,6 +460,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             this.keyBind = null;
             this.score = null;
         }
+        this.invalidate();
         return this.getThis();
     }
 
@@ -234,6 +485,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             this.keyBind = null;
             this.score = null;
         }
+        this.invalidate();
         return this.getThis();
     }
 
@@ -254,6 +506,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             this.translate = null;
             this.score = null;
         }
+        this.invalidate();
         return this.getThis();
     }
 
@@ -274,6 +527,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             this.translate = null;
             this.score = null;
         }
+        this.invalidate();
         return this.getThis();
     }
 
@@ -286,57 +540,27 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
     @Nullable
     public ChatColor getColor()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.color == null)
-            {
-                if (other.parent == null)
-                {
-                    return null;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.color;
-        }
+        return getColor(this.getResolvedStyle());
     }
 
     public ELEMENT setColor(@Nullable ChatColor color)
     {
-        if ((color != null) && (color == this.getColor()))
-        {
-            this.color = null;
-        }
         this.color = color;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
     public boolean isBold()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.bold == null)
-            {
-                if (other.parent == null)
-                {
-                    return false;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.bold;
-        }
+        return (this.getResolvedStyle() & STYLE_BOLD) != 0;
     }
 
     public ELEMENT setBold(@Nullable Boolean bold)
     {
-        if ((bold != null) && (bold == this.isBold()))
-        {
-            this.bold = null;
-        }
         this.bold = bold;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
@@ -348,29 +572,14 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
 
     public boolean isUnderlined()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.underlined == null)
-            {
-                if (other.parent == null)
-                {
-                    return false;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.underlined;
-        }
+        return (this.getResolvedStyle() & STYLE_UNDERLINED) != 0;
     }
 
     public ELEMENT setUnderlined(@Nullable Boolean underlined)
     {
-        if ((underlined != null) && (underlined == this.isUnderlined()))
-        {
-            this.underlined = null;
-        }
         this.underlined = underlined;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
@@ -382,29 +591,14 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
 
     public boolean isItalic()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.italic == null)
-            {
-                if (other.parent == null)
-                {
-                    return false;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.italic;
-        }
+        return (this.getResolvedStyle() & STYLE_ITALIC) != 0;
     }
 
     public ELEMENT setItalic(@Nullable Boolean italic)
     {
-        if ((italic != null) && (italic == this.isItalic()))
-        {
-            this.italic = null;
-        }
         this.italic = italic;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
@@ -416,29 +610,14 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
 
     public boolean isStrikethrough()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.strikethrough == null)
-            {
-                if (other.parent == null)
-                {
-                    return false;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.strikethrough;
-        }
+        return (this.getResolvedStyle() & STYLE_STRIKETHROUGH) != 0;
     }
 
     public ELEMENT setStrikethrough(@Nullable Boolean strikethrough)
     {
-        if ((strikethrough != null) && (strikethrough == this.isStrikethrough()))
-        {
-            this.strikethrough = null;
-        }
         this.strikethrough = strikethrough;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
@@ -450,29 +629,14 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
 
     public boolean isObfuscated()
     {
-        BaseComponentElement<ELEMENT, EVENT, INSERT> other = this;
-        while (true)
-        {
-            if (other.obfuscated == null)
-            {
-                if (other.parent == null)
-                {
-                    return false;
-                }
-                other = other.parent;
-                continue;
-            }
-            return other.obfuscated;
-        }
+        return (this.getResolvedStyle() & STYLE_OBFUSCATED) != 0;
     }
 
     public ELEMENT setObfuscated(@Nullable Boolean obfuscated)
     {
-        if ((obfuscated != null) && (obfuscated == this.isObfuscated()))
-        {
-            this.obfuscated = null;
-        }
         this.obfuscated = obfuscated;
+        this.invalidateStyle();
+        this.invalidate();
         return this.getThis();
     }
 
@@ -543,6 +707,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             throw new IllegalStateException("Invalid type of event (expected append chat): " + insertion.getAction());
         }
         this.insertion = insertion;
+        this.invalidate();
         return this.getThis();
     }
 
@@ -578,6 +743,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             throw new IllegalStateException("Invalid type of event (expected hover): " + hoverEvent.getAction().getType());
         }
         this.hoverEvent = hoverEvent;
+        this.invalidate();
         return this.getThis();
     }
 
@@ -613,6 +779,7 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             throw new IllegalStateException("Invalid type of event (expected click): " + clickEvent.getAction().getType());
         }
         this.clickEvent = clickEvent;
+        this.invalidate();
         return this.getThis();
     }
 
@@ -635,11 +802,13 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
         copy.underlined = this.underlined;
         copy.color = this.color;
 
+        // immutable events are shared, duplicate() returns this same instance for them.
         copy.insertion = (this.insertion == null) ? null : (INSERT) this.insertion.duplicate();
         copy.hoverEvent = (this.hoverEvent == null) ? null : (EVENT) this.hoverEvent.duplicate();
         copy.clickEvent = (this.clickEvent == null) ? null : (EVENT) this.clickEvent.duplicate();
 
         copy.score = this.score;
+        copy.selector = this.selector;
         copy.keyBind = this.keyBind;
         copy.text = this.text;
         copy.translate = this.translate;
@@ -653,7 +822,9 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
             ArrayList<ELEMENT> objects = new ArrayList<>(this.extra.size());
             for (ELEMENT componentElement : this.extra)
             {
-                objects.add(componentElement.duplicate());
+                ELEMENT element = componentElement.duplicate();
+                element.parent = copy;
+                objects.add(element);
             }
             copy.extra = objects;
         }
@@ -683,74 +854,38 @@ abstract class BaseComponentElement<ELEMENT extends BaseComponentElement<ELEMENT
         return copy;
     }
 
+    /**
+     * Writes json representation of this component to given appendable.
+     *
+     * @param appendable
+     *         appendable to write json to.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    public void toJson(Appendable appendable) throws IOException
+    {
+        ComponentJsonWriter.write(this, appendable);
+    }
+
+    /**
+     * Writes legacy representation of this component with color codes to given appendable, codes are only written when style of text
+     * changes.
+     *
+     * @param appendable
+     *         appendable to write legacy text to.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    public void toLegacyText(Appendable appendable) throws IOException
+    {
+        LegacyTextWriter.write(this, appendable);
+    }
+
     @Override
     public String toString()
     {
-        ToStringBuilder toStringBuilder = new ToStringBuilder(this, ToStringStyle.JSON_STYLE).appendSuper(super.toString());
-        if (this.text != null)
-        {
-            toStringBuilder.append("text", this.text);
-        }
-        if ((this.extra != null) && ! this.extra.isEmpty())
-        {
-            toStringBuilder.append("extra", this.extra);
-        }
-        if (this.translate != null)
-        {
-            toStringBuilder.append("translate", this.translate);
-        }
-        if ((this.with != null) && ! this.with.isEmpty())
-        {
-            toStringBuilder.append("with", this.with);
-        }
-        if (this.keyBind != null)
-        {
-            toStringBuilder.append("keybind", this.keyBind.getName());
-        }
-        if (this.score != null)
-        {
-            toStringBuilder.append("score", this.score);
-        }
-        if (this.selector != null)
-        {
-            toStringBuilder.append("selector", this.selector);
-        }
-        if (this.color != null)
-        {
-            toStringBuilder.append("color", this.color.name().toLowerCase());
-        }
-        if (this.bold != null)
-        {
-            toStringBuilder.append("bold", this.bold);
-        }
-        if (this.underlined != null)
-        {
-            toStringBuilder.append("underlined", this.underlined);
-        }
-        if (this.italic != null)
-        {
-            toStringBuilder.append("italic", this.italic);
-        }
-        if (this.strikethrough != null)
-        {
-            toStringBuilder.append("strikethrough", this.strikethrough);
-        }
-        if (this.obfuscated != null)
-        {
-            toStringBuilder.append("obfuscated", this.obfuscated);
-        }
-        if (this.insertion != null)
-        {
-            toStringBuilder.append("insertion", this.insertion);
-        }
-        if (this.hoverEvent != null)
-        {
-            toStringBuilder.append("hoverEvent", this.hoverEvent);
-        }
-        if (this.clickEvent != null)
-        {
-            toStringBuilder.append("clickEvent", this.clickEvent);
-        }
-        return toStringBuilder.toString();
+        return ComponentJsonWriter.toJson(this);
     }
 }
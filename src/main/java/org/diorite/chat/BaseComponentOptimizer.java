@@ -24,180 +24,448 @@
 
 package org.diorite.chat;
 
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
+/**
+ * Single bottom-up pass over component tree: removes style already inherited from parents, drops nodes without content, merges
+ * adjacent text nodes with this same formatting, hoists formatting shared by all children to parent and collapses single-child chains. <br>
+ * Inherited style is passed down packed into single int (see FORMAT_ constants in {@link BaseComponentElement}) together with inherited
+ * event instances, so events are never copied and each node is visited once.
+ */
 final class BaseComponentOptimizer
 {
     private BaseComponentOptimizer() {}
 
     static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void optimize(E element)
     {
-        copyStyleToExtra(element);
-        optimize0(element);
-        removeRedundantStyleFromExtra(element);
-    }
-
-    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void optimize0(E element)
-    {
-        // TODO
+        optimize0(element, 0, null, null, null);
     }
 
-    // checks if this element have anything that affects chat.
-    static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean isImportant(E element, boolean withExtra)
+    @SuppressWarnings("unchecked")
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void optimize0(
+            E element, int inherited, @Nullable I insertion, @Nullable V hoverEvent, @Nullable V clickEvent)
     {
-        if (element.text != null)
+        removeInheritedStyle(element, inherited, insertion, hoverEvent, clickEvent);
+        if (element.with != null)
         {
-            return (! element.text.isEmpty()) || (withExtra && areChildrenImportant(element));
+            // arguments are separate components, so they are optimized without any known style.
+            for (Object arg : element.with)
+            {
+                if (arg instanceof BaseComponentElement)
+                {
+                    optimize0((E) arg, 0, null, null, null);
+                }
+            }
         }
-        if (element.selector != null)
+        List<E> extra = element.extra;
+        if ((extra == null) || extra.isEmpty())
         {
-            return (! element.selector.isEmpty()) || (withExtra && areChildrenImportant(element));
+            element.extra = null;
+            return;
         }
-        if (element.translate != null)
+
+        int style = applyFormat(inherited, element.getFormat());
+        I childInsertion = (element.insertion == null) ? insertion : element.insertion;
+        V childHoverEvent = (element.hoverEvent == null) ? hoverEvent : element.hoverEvent;
+        V childClickEvent = (element.clickEvent == null) ? clickEvent : element.clickEvent;
+
+        for (E child : extra)
         {
-            return (! element.translate.isEmpty()) || (withExtra && areChildrenImportant(element));
+            optimize0(child, style, childInsertion, childHoverEvent, childClickEvent);
         }
-        if (element.keyBind != null)
+        List<E> children = collect(element, extra);
+
+        if (! hasContent(element))
         {
-            return true;
+            if ((children.size() > 1) && hoistCommonStyle(element, children))
+            {
+                // some children might lose all their formatting.
+                children = collect(element, children);
+            }
+            if (children.size() == 1)
+            {
+                // single child of empty node, so both can be merged into one node.
+                E child = children.get(0);
+                copyContent(child, element);
+                overrideStyle(child, element);
+                children = (child.extra == null) ? Collections.emptyList() : child.extra;
+                for (E grandChild : children)
+                {
+                    grandChild.parent = element;
+                }
+            }
+            else if (! children.isEmpty())
+            {
+                // first child without own style can be used as content of this element, as content is displayed before children.
+                E first = children.get(0);
+                if (! first.hasFormatting() && (first.extra == null))
+                {
+                    copyContent(first, element);
+                    children.remove(0);
+                }
+            }
+            removeInheritedStyle(element, inherited, insertion, hoverEvent, clickEvent);
         }
-        return withExtra && areChildrenImportant(element);
+        element.extra = children.isEmpty() ? null : children;
     }
 
-    static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean areChildrenImportant(E element)
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> List<E> collect(E element, List<E> extra)
     {
-        if ((element.extra == null) || element.extra.isEmpty())
+        Siblings<E, V, I> siblings = new Siblings<>(element, extra.size());
+        for (E child : extra)
         {
-            return false;
-        }
-        for (E extra : element.extra)
-        {
-            if (isImportant(extra, true))
+            if (hasContent(child))
             {
-                return true;
+                siblings.add(child);
             }
+            else if (child.extra != null)
+            {
+                if (child.hasFormatting())
+                {
+                    siblings.add(child);
+                }
+                else
+                {
+                    // wrapper without content and style, its children already use style of given element.
+                    for (E grandChild : child.extra)
+                    {
+                        siblings.add(grandChild);
+                    }
+                }
+            }
+            // else: nothing to display, so element can be dropped.
         }
-        return false;
+        return siblings.finish();
     }
 
-    static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void removeRedundantStyleFromExtra(E element)
+    /**
+     * Collects optimized children of single node, merges adjacent text nodes with this same formatting.
+     */
+    private static final class Siblings<E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V>
     {
-        if (element.extra == null)
+        private final E       parent;
+        private final List<E> children;
+
+        // merged text of last child, created on first merge and written back to that child when other child is added, so merging is linear.
+        private @Nullable StringBuilder text;
+
+        Siblings(E parent, int size)
         {
-            return;
+            this.parent = parent;
+            this.children = new ArrayList<>(size);
         }
-        for (E extra : element.extra)
+
+        void add(E element)
         {
-            removeRedundantStyleFromExtra(extra);
-            if (extra.bold == element.bold)
-            {
-                extra.bold = null;
-            }
-            if (extra.italic == element.italic)
-            {
-                extra.italic = null;
-            }
-            if (extra.obfuscated == element.obfuscated)
-            {
-                extra.obfuscated = null;
-            }
-            if (extra.strikethrough == element.strikethrough)
-            {
-                extra.strikethrough = null;
-            }
-            if (extra.underlined == element.underlined)
-            {
-                extra.underlined = null;
-            }
-            if (extra.color == element.color)
+            int size = this.children.size();
+            if (size != 0)
             {
-                extra.color = null;
+                E last = this.children.get(size - 1);
+                if (isTextNode(last) && isTextNode(element) && hasThisSameFormatting(last, element))
+                {
+                    if (this.text == null)
+                    {
+                        this.text = new StringBuilder(last.text);
+                    }
+                    this.text.append(element.text);
+                    return;
+                }
+                this.flush();
             }
+            element.parent = this.parent;
+            this.children.add(element);
+        }
 
-            if (Objects.equals(extra.insertion, element.insertion))
-            {
-                extra.insertion = null;
-            }
-            if (Objects.equals(extra.hoverEvent, element.hoverEvent))
-            {
-                extra.hoverEvent = null;
-            }
-            if (Objects.equals(extra.clickEvent, element.clickEvent))
+        private void flush()
+        {
+            if (this.text != null)
             {
-                extra.clickEvent = null;
+                this.children.get(this.children.size() - 1).text = this.text.toString();
+                this.text = null;
             }
         }
+
+        List<E> finish()
+        {
+            this.flush();
+            return this.children;
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void copyStyleToExtra(E element)
+    // moves formatting shared by all children to given element, returns true if anything was moved.
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean hoistCommonStyle(
+            E element, List<E> children)
     {
-        if (element.extra == null)
+        E first = children.get(0);
+        Boolean bold = first.bold;
+        Boolean italic = first.italic;
+        Boolean underlined = first.underlined;
+        Boolean strikethrough = first.strikethrough;
+        Boolean obfuscated = first.obfuscated;
+        ChatColor color = first.color;
+        I insertion = first.insertion;
+        V hoverEvent = first.hoverEvent;
+        V clickEvent = first.clickEvent;
+        for (int i = 1, size = children.size(); i < size; i++)
         {
-            return;
+            E child = children.get(i);
+            bold = Objects.equals(bold, child.bold) ? bold : null;
+            italic = Objects.equals(italic, child.italic) ? italic : null;
+            underlined = Objects.equals(underlined, child.underlined) ? underlined : null;
+            strikethrough = Objects.equals(strikethrough, child.strikethrough) ? strikethrough : null;
+            obfuscated = Objects.equals(obfuscated, child.obfuscated) ? obfuscated : null;
+            color = (color == child.color) ? color : null;
+            insertion = isSameEvent(insertion, child.insertion) ? insertion : null;
+            hoverEvent = isSameEvent(hoverEvent, child.hoverEvent) ? hoverEvent : null;
+            clickEvent = isSameEvent(clickEvent, child.clickEvent) ? clickEvent : null;
         }
-        for (E extra : element.extra)
+        if ((bold == null) && (italic == null) && (underlined == null) && (strikethrough == null) && (obfuscated == null) && (color == null) &&
+            (insertion == null) && (hoverEvent == null) && (clickEvent == null))
         {
-            if (extra.bold == null)
+            return false;
+        }
+        // element don't have any content, so its own style only matters for children.
+        for (E child : children)
+        {
+            if (bold != null)
             {
-                extra.bold = element.bold;
+                child.bold = null;
             }
-            if (extra.italic == null)
+            if (italic != null)
             {
-                extra.italic = element.italic;
+                child.italic = null;
             }
-            if (extra.obfuscated == null)
+            if (underlined != null)
             {
-                extra.obfuscated = element.obfuscated;
+                child.underlined = null;
             }
-            if (extra.strikethrough == null)
+            if (strikethrough != null)
             {
-                extra.strikethrough = element.strikethrough;
+                child.strikethrough = null;
             }
-            if (extra.underlined == null)
+            if (obfuscated != null)
             {
-                extra.underlined = element.underlined;
+                child.obfuscated = null;
             }
-            if (extra.color == null)
+            if (color != null)
             {
-                extra.color = element.color;
+                child.color = null;
             }
-
-            if (extra.insertion == null)
+            if (insertion != null)
             {
-                extra.insertion = (element.insertion == null) ? null : (I) element.insertion.duplicate();
+                child.insertion = null;
             }
-            if (extra.hoverEvent == null)
+            if (hoverEvent != null)
             {
-                extra.hoverEvent = (element.hoverEvent == null) ? null : (V) element.hoverEvent.duplicate();
+                child.hoverEvent = null;
             }
-            if (extra.clickEvent == null)
+            if (clickEvent != null)
+            {
+                child.clickEvent = null;
+            }
+        }
+        if (bold != null)
+        {
+            element.bold = bold;
+        }
+        if (italic != null)
+        {
+            element.italic = italic;
+        }
+        if (underlined != null)
+        {
+            element.underlined = underlined;
+        }
+        if (strikethrough != null)
+        {
+            element.strikethrough = strikethrough;
+        }
+        if (obfuscated != null)
+        {
+            element.obfuscated = obfuscated;
+        }
+        if (color != null)
+        {
+            element.color = color;
+        }
+        if (insertion != null)
+        {
+            element.insertion = insertion;
+        }
+        if (hoverEvent != null)
+        {
+            element.hoverEvent = hoverEvent;
+        }
+        if (clickEvent != null)
+        {
+            element.clickEvent = clickEvent;
+        }
+        return true;
+    }
+
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void removeInheritedStyle(
+            E element, int inherited, @Nullable I insertion, @Nullable V hoverEvent, @Nullable V clickEvent)
+    {
+        if (isInherited(element.bold, inherited, BaseComponentElement.FORMAT_BOLD))
+        {
+            element.bold = null;
+        }
+        if (isInherited(element.italic, inherited, BaseComponentElement.FORMAT_ITALIC))
+        {
+            element.italic = null;
+        }
+        if (isInherited(element.underlined, inherited, BaseComponentElement.FORMAT_UNDERLINED))
+        {
+            element.underlined = null;
+        }
+        if (isInherited(element.strikethrough, inherited, BaseComponentElement.FORMAT_STRIKETHROUGH))
+        {
+            element.strikethrough = null;
+        }
+        if (isInherited(element.obfuscated, inherited, BaseComponentElement.FORMAT_OBFUSCATED))
+        {
+            element.obfuscated = null;
+        }
+        int color = (inherited & BaseComponentElement.FORMAT_COLOR_MASK) >>> BaseComponentElement.FORMAT_COLOR_SHIFT;
+        if ((element.color != null) && (color == (element.color.ordinal() + 1)))
+        {
+            element.color = null;
+        }
+        if ((element.insertion != null) && isSameEvent(element.insertion, insertion))
+        {
+            element.insertion = null;
+        }
+        if ((element.hoverEvent != null) && isSameEvent(element.hoverEvent, hoverEvent))
+        {
+            element.hoverEvent = null;
+        }
+        if ((element.clickEvent != null) && isSameEvent(element.clickEvent, clickEvent))
+        {
+            element.clickEvent = null;
+        }
+    }
+
+    private static boolean isInherited(@Nullable Boolean value, int inherited, int shift)
+    {
+        return (value != null) && (BaseComponentElement.format(value, shift) == (inherited & (0b11 << shift)));
+    }
+
+    // applies own format of element to inherited one, only defined flags are changed.
+    private static int applyFormat(int inherited, int format)
+    {
+        int style = inherited;
+        for (int shift = BaseComponentElement.FORMAT_BOLD; shift <= BaseComponentElement.FORMAT_OBFUSCATED; shift += 2)
+        {
+            if ((format & (0b01 << shift)) != 0)
             {
-                extra.clickEvent = (element.clickEvent == null) ? null : (V) element.clickEvent.duplicate();
+                style = (style & ~ (0b11 << shift)) | (format & (0b11 << shift));
             }
-            copyStyleToExtra(extra);
         }
+        if ((format & BaseComponentElement.FORMAT_COLOR_MASK) != 0)
+        {
+            style = (style & ~ BaseComponentElement.FORMAT_COLOR_MASK) | (format & BaseComponentElement.FORMAT_COLOR_MASK);
+        }
+        return style;
+    }
+
+    // copy style of given element over style of other element.
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void overrideStyle(E from, E to)
+    {
+        if (from.bold != null)
+        {
+            to.bold = from.bold;
+        }
+        if (from.italic != null)
+        {
+            to.italic = from.italic;
+        }
+        if (from.underlined != null)
+        {
+            to.underlined = from.underlined;
+        }
+        if (from.strikethrough != null)
+        {
+            to.strikethrough = from.strikethrough;
+        }
+        if (from.obfuscated != null)
+        {
+            to.obfuscated = from.obfuscated;
+        }
+        if (from.color != null)
+        {
+            to.color = from.color;
+        }
+        if (from.insertion != null)
+        {
+            to.insertion = from.insertion;
+        }
+        if (from.hoverEvent != null)
+        {
+            to.hoverEvent = from.hoverEvent;
+        }
+        if (from.clickEvent != null)
+        {
+            to.clickEvent = from.clickEvent;
+        }
+    }
+
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> void copyContent(E from, E to)
+    {
+        to.text = from.text;
+        to.translate = from.translate;
+        to.with = from.with;
+        to.score = from.score;
+        to.selector = from.selector;
+        to.keyBind = from.keyBind;
+    }
+
+    // checks if element displays anything by itself, without children.
+    static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean hasContent(E element)
+    {
+        return ((element.text != null) && ! element.text.isEmpty()) || (element.translate != null) || (element.score != null) ||
+               (element.keyBind != null) || ((element.selector != null) && ! element.selector.isEmpty());
+    }
+
+    private static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean isTextNode(E element)
+    {
+        return (element.text != null) && (element.translate == null) && (element.score == null) && (element.keyBind == null) &&
+               (element.selector == null) && (element.extra == null);
+    }
+
+    // events are compared with action too, as equals of string events ignores it.
+    static boolean isSameEvent(@Nullable ChatMessageEvent eventA, @Nullable ChatMessageEvent eventB)
+    {
+        if (eventA == eventB)
+        {
+            return true;
+        }
+        return (eventA != null) && (eventB != null) && (eventA.getAction() == eventB.getAction()) && eventA.equals(eventB);
     }
 
     static <E extends BaseComponentElement<E, V, I>, V extends ChatMessageEvent, I extends V> boolean hasThisSameFormatting(E elementA, E elementB)
     {
-        if (elementA.bold != elementB.bold)
+        if (! Objects.equals(elementA.bold, elementB.bold))
         {
             return false;
         }
-        if (elementA.italic != elementB.italic)
+        if (! Objects.equals(elementA.italic, elementB.italic))
         {
             return false;
         }
-        if (elementA.obfuscated != elementB.obfuscated)
+        if (! Objects.equals(elementA.obfuscated, elementB.obfuscated))
         {
             return false;
         }
-        if (elementA.strikethrough != elementB.strikethrough)
+        if (! Objects.equals(elementA.strikethrough, elementB.strikethrough))
         {
             return false;
         }
-        if (elementA.underlined != elementB.underlined)
+        if (! Objects.equals(elementA.underlined, elementB.underlined))
         {
             return false;
         }
@@ -205,14 +473,14 @@ final class BaseComponentOptimizer
         {
             return false;
         }
-        if (! Objects.equals(elementA.clickEvent, elementB.clickEvent))
+        if (! isSameEvent(elementA.clickEvent, elementB.clickEvent))
         {
             return false;
         }
-        if (! Objects.equals(elementA.hoverEvent, elementB.hoverEvent))
+        if (! isSameEvent(elementA.hoverEvent, elementB.hoverEvent))
         {
             return false;
         }
-        return Objects.equals(elementA.insertion, elementB.insertion);
+        return isSameEvent(elementA.insertion, elementB.insertion);
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Result of parsing many markup texts at once by {@link CompiledParser#parseAll(Map, Executor)}. <br>
+ * Entries that could not be parsed are reported separately, so single invalid text does not abort whole batch. Both maps are immutable and keep
+ * order of source map.
+ */
+public final class BatchParseResult
+{
+    private final Map<String, ChatMessage> messages;
+    private final Map<String, Throwable>   errors;
+
+    private BatchParseResult(Map<String, ChatMessage> messages, Map<String, Throwable> errors)
+    {
+        this.messages = messages;
+        this.errors = errors;
+    }
+
+    /**
+     * Returns parsed messages by key of source text.
+     *
+     * @return parsed messages.
+     */
+    public Map<String, ChatMessage> getMessages()
+    {
+        return this.messages;
+    }
+
+    /**
+     * Returns message parsed from text of given key, or null if there was no such text or it could not be parsed.
+     *
+     * @param key
+     *         key of source text.
+     *
+     * @return parsed message.
+     */
+    @Nullable
+    public ChatMessage getMessage(String key)
+    {
+        return this.messages.get(key);
+    }
+
+    /**
+     * Returns errors thrown while parsing text by key of that text.
+     *
+     * @return errors of texts that could not be parsed.
+     */
+    public Map<String, Throwable> getErrors()
+    {
+        return this.errors;
+    }
+
+    /**
+     * Returns true if any text could not be parsed.
+     *
+     * @return true if any text could not be parsed.
+     */
+    public boolean hasErrors()
+    {
+        return ! this.errors.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchParseResult{messages=" + this.messages.size() + ", errors=" + this.errors.size() + "}";
+    }
+
+    static BatchParseResult parse(CompiledParser compiledParser, Map<String, String> texts, Executor executor)
+    {
+        int size = texts.size();
+        String[] keys = new String[size];
+        String[] values = new String[size];
+        int index = 0;
+        for (Map.Entry<String, String> entry : texts.entrySet())
+        {
+            keys[index] = entry.getKey();
+            values[index++] = entry.getValue();
+        }
+
+        // each task parses continuous range of texts and stores results in own part of array, so no synchronization is needed.
+        Object[] results = new Object[size];
+        int tasks = Math.min(size, Runtime.getRuntime().availableProcessors() * 4);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+        for (int i = 0; i < tasks; i++)
+        {
+            int from = (int) (((long) size * i) / tasks);
+            int to = (int) (((long) size * (i + 1)) / tasks);
+            futures[i] = CompletableFuture.runAsync(() -> parse(compiledParser, values, results, from, to), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+
+        Map<String, ChatMessage> messages = new LinkedHashMap<>(size);
+        Map<String, Throwable> errors = new LinkedHashMap<>(4);
+        for (int i = 0; i < size; i++)
+        {
+            if (results[i] instanceof Throwable)
+            {
+                errors.put(keys[i], (Throwable) results[i]);
+            }
+            else
+            {
+                messages.put(keys[i], (ChatMessage) results[i]);
+            }
+        }
+        return new BatchParseResult(Collections.unmodifiableMap(messages), Collections.unmodifiableMap(errors));
+    }
+
+    private static void parse(CompiledParser compiledParser, String[] texts, Object[] results, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            try
+            {
+                results[i] = CompactComponentTree.of(compiledParser.parseElement(texts[i])).toChatMessage();
+            }
+            catch (RuntimeException | StackOverflowError e) // invalid markup can also exhaust stack of parser.
+            {
+                results[i] = e;
+            }
+        }
+    }
+}
@@ -26,13 +26,8 @@ package org.diorite.chat;
 
 import javax.annotation.Nullable;
 
-import java.util.Map;
-import java.util.regex.Pattern;
-
 import org.apache.commons.lang3.Validate;
 
-import it.unimi.dsi.fastutil.chars.Char2ObjectOpenHashMap;
-
 public enum ChatColor
 {
     BLACK("black", '0'),
@@ -60,12 +55,14 @@ public enum ChatColor
 
     public static final char COLOR_CHAR                   = '\u00A7';
     public static final char DEFAULT_ALTERNATE_COLOR_CHAR = '&';
-    private static final Pattern                   STRIP_COLOR_PATTERN;
-    private static final Map<Character, ChatColor> BY_CHAR;
-    private final        String                    name;
-    private final        char                      code;
-    private final        boolean                   isFormat;
-    private final        String                    toString;
+    // colors by code char, only lower case codes are used, like in old map.
+    private static final ChatColor[] BY_CHAR = new ChatColor[128];
+    // bitset of chars that are valid codes, ignoring case.
+    private static final long[]      CODES   = new long[2];
+    private final        String      name;
+    private final        char        code;
+    private final        boolean     isFormat;
+    private final        String      toString;
 
     ChatColor(String name, char code)
     {
@@ -108,7 +105,7 @@ public enum ChatColor
     @Nullable
     public static ChatColor getByChar(char code)
     {
-        return BY_CHAR.get(code);
+        return (code < BY_CHAR.length) ? BY_CHAR[code] : null;
     }
 
     @Nullable
@@ -116,12 +113,102 @@ public enum ChatColor
     {
         Validate.isTrue(! code.isEmpty(), "Code must have at least one char");
 
-        return BY_CHAR.get(code.charAt(0));
+        return getByChar(code.charAt(0));
+    }
+
+    /**
+     * Returns true if given char is valid code of color or format, ignoring case.
+     *
+     * @param c
+     *         char to check.
+     *
+     * @return true if given char is valid code.
+     */
+    public static boolean isCode(char c)
+    {
+        return (c < 128) && ((CODES[c >>> 6] & (1L << c)) != 0);
     }
 
     public static String stripColor(CharSequence input)
     {
-        return STRIP_COLOR_PATTERN.matcher(input).replaceAll("");
+        int length = input.length();
+        int first = findCode(input, COLOR_CHAR, 0, length);
+        if (first == - 1)
+        {
+            return input.toString();
+        }
+        StringBuilder builder = new StringBuilder(length - 2);
+        builder.append(input, 0, first);
+        stripColor(input, first, length, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends given range of text to given builder, skipping all color and format codes.
+     *
+     * @param input
+     *         text to strip.
+     * @param start
+     *         start of range.
+     * @param end
+     *         end of range (exclusive).
+     * @param builder
+     *         builder to use.
+     */
+    public static void stripColor(CharSequence input, int start, int end, StringBuilder builder)
+    {
+        int last = start;
+        for (int i = start; i < (end - 1); i++)
+        {
+            if ((input.charAt(i) == COLOR_CHAR) && isCode(input.charAt(i + 1)))
+            {
+                builder.append(input, last, i);
+                last = i + 2;
+                i++;
+            }
+        }
+        builder.append(input, last, end);
+    }
+
+    /**
+     * Removes all color and format codes from given range of array, text after removed codes is moved back in place.
+     *
+     * @param chars
+     *         text to strip.
+     * @param start
+     *         start of range.
+     * @param end
+     *         end of range (exclusive).
+     *
+     * @return new end of range.
+     */
+    public static int stripColor(char[] chars, int start, int end)
+    {
+        int target = start;
+        for (int i = start; i < end; i++)
+        {
+            char c = chars[i];
+            if ((c == COLOR_CHAR) && (i < (end - 1)) && isCode(chars[i + 1]))
+            {
+                i++;
+                continue;
+            }
+            chars[target++] = c;
+        }
+        return target;
+    }
+
+    // returns index of first code using given code char, or -1.
+    private static int findCode(CharSequence input, char codeChar, int start, int end)
+    {
+        for (int i = start; i < (end - 1); i++)
+        {
+            if ((input.charAt(i) == codeChar) && isCode(input.charAt(i + 1)))
+            {
+                return i;
+            }
+        }
+        return - 1;
     }
 
     public static ChatMessage translateAlternateColorCodes(char altColorChar, String textToTranslate)
@@ -136,15 +223,14 @@ public enum ChatColor
 
     public static String translateAlternateColorCodesInString(char altColorChar, String textToTranslate)
     {
-        char[] b = textToTranslate.toCharArray();
-        for (int i = 0; i < (b.length - 1); i++)
+        int length = textToTranslate.length();
+        int first = findCode(textToTranslate, altColorChar, 0, length);
+        if (first == - 1)
         {
-            if ((b[i] == altColorChar) && ("0123456789AaBbCcDdEeFfKkLlMmNnOoRr".indexOf(b[(i + 1)]) > - 1))
-            {
-                b[i] = COLOR_CHAR;
-                b[(i + 1)] = Character.toLowerCase(b[(i + 1)]);
-            }
+            return textToTranslate;
         }
+        char[] b = textToTranslate.toCharArray();
+        replaceCodes(altColorChar, COLOR_CHAR, b, first, length);
         return new String(b);
     }
 
@@ -153,53 +239,120 @@ public enum ChatColor
         return translateAlternateColorCodesInString(DEFAULT_ALTERNATE_COLOR_CHAR, textToTranslate);
     }
 
+    /**
+     * Changes codes using given alternate code char in given range of array to legacy codes, array is changed in place.
+     *
+     * @param altColorChar
+     *         alternate code char.
+     * @param chars
+     *         text to translate.
+     * @param start
+     *         start of range.
+     * @param end
+     *         end of range (exclusive).
+     *
+     * @return amount of changed codes.
+     */
+    public static int translateAlternateColorCodesInArray(char altColorChar, char[] chars, int start, int end)
+    {
+        return replaceCodes(altColorChar, COLOR_CHAR, chars, start, end);
+    }
+
     public static String removeColorCodesInString(char altColorChar, String textToTranslate)
     {
+        int length = textToTranslate.length();
+        int first = findCode(textToTranslate, COLOR_CHAR, 0, length);
+        if (first == - 1)
+        {
+            return textToTranslate;
+        }
         char[] b = textToTranslate.toCharArray();
-        for (int i = 0; i < (b.length - 1); i++)
+        replaceCodes(COLOR_CHAR, altColorChar, b, first, length);
+        return new String(b);
+    }
+
+    /**
+     * Changes legacy codes in given range of array to codes using given alternate code char, array is changed in place.
+     *
+     * @param altColorChar
+     *         alternate code char.
+     * @param chars
+     *         text to change.
+     * @param start
+     *         start of range.
+     * @param end
+     *         end of range (exclusive).
+     *
+     * @return amount of changed codes.
+     */
+    public static int removeColorCodesInArray(char altColorChar, char[] chars, int start, int end)
+    {
+        return replaceCodes(COLOR_CHAR, altColorChar, chars, start, end);
+    }
+
+    private static int replaceCodes(char from, char to, char[] chars, int start, int end)
+    {
+        int count = 0;
+        for (int i = start; i < (end - 1); i++)
         {
-            if ((b[i] == COLOR_CHAR) && ("0123456789AaBbCcDdEeFfKkLlMmNnOoRr".indexOf(b[(i + 1)]) > - 1))
+            if ((chars[i] == from) && isCode(chars[i + 1]))
             {
-                b[i] = altColorChar;
-                b[(i + 1)] = Character.toLowerCase(b[(i + 1)]);
+                chars[i] = to;
+                chars[i + 1] = Character.toLowerCase(chars[i + 1]);
+                count++;
             }
         }
-        return new String(b);
+        return count;
     }
 
     public static String getLastColors(CharSequence input)
     {
-        StringBuilder result = new StringBuilder();
+        // find start of last codes that are still active: codes after last color or reset.
         int length = input.length();
-        for (int index = length - 1; index > - 1; index--)
+        int first = - 1;
+        int count = 0;
+        for (int index = length - 2; index > - 1; index--)
         {
-            char section = input.charAt(index);
-            if ((section == COLOR_CHAR) && (index < (length - 1)))
+            if (input.charAt(index) != COLOR_CHAR)
             {
-                char c = input.charAt(index + 1);
-                ChatColor color = getByChar(c);
-                if (color != null)
+                continue;
+            }
+            ChatColor color = getByChar(input.charAt(index + 1));
+            if (color != null)
+            {
+                first = index;
+                count++;
+                if ((color.isColor()) || (color == RESET))
                 {
-                    result.insert(0, color.toString());
-                    if ((color.isColor()) || (color == RESET))
-                    {
-                        break;
-                    }
+                    break;
                 }
             }
         }
-        return result.toString();
+        if (count == 0)
+        {
+            return "";
+        }
+        char[] result = new char[count * 2];
+        int size = 0;
+        for (int index = first; index < (length - 1); index++)
+        {
+            if ((input.charAt(index) == COLOR_CHAR) && (getByChar(input.charAt(index + 1)) != null))
+            {
+                result[size++] = COLOR_CHAR;
+                result[size++] = input.charAt(index + 1);
+            }
+        }
+        return new String(result, 0, size);
     }
 
     static
     {
-        STRIP_COLOR_PATTERN = Pattern.compile("(?i)" + String.valueOf(COLOR_CHAR) + "[0-9A-FK-OR]");
-
-        ChatColor[] values = values();
-        BY_CHAR = new Char2ObjectOpenHashMap<>(values.length);
-        for (ChatColor color : values)
+        for (ChatColor color : values())
         {
-            BY_CHAR.put(color.code, color);
+            BY_CHAR[color.code] = color;
+            char upper = Character.toUpperCase(color.code);
+            CODES[color.code >>> 6] |= 1L << color.code;
+            CODES[upper >>> 6] |= 1L << upper;
         }
     }
 }
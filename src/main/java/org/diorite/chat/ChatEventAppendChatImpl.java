@@ -34,6 +34,6 @@ class ChatEventAppendChatImpl extends ChatEventStringAbstract implements ChatEve
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventAppendChatImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
@@ -44,7 +44,7 @@ class ChatEventChangePageImpl implements ChatEventChangePage
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventChangePageImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 
     @Override
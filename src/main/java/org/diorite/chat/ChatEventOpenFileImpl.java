@@ -34,6 +34,6 @@ class ChatEventOpenFileImpl extends ChatEventStringAbstract implements ChatEvent
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventOpenFileImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
@@ -34,6 +34,6 @@ class ChatEventOpenURLImpl extends ChatEventStringAbstract implements ChatEventO
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventOpenURLImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
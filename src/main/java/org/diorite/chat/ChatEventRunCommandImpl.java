@@ -34,6 +34,6 @@ class ChatEventRunCommandImpl extends ChatEventStringAbstract implements ChatEve
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventRunCommandImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
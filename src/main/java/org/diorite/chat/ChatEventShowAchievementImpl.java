@@ -34,6 +34,6 @@ class ChatEventShowAchievementImpl extends ChatEventStringAbstract implements Ch
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventShowAchievementImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
@@ -46,7 +46,7 @@ class ChatEventShowEntityImpl implements ChatEventShowEntity
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventShowEntityImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 
     @Override
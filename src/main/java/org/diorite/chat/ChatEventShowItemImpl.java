@@ -46,7 +46,7 @@ class ChatEventShowItemImpl implements ChatEventShowItem
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventShowItemImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 
     @Override
@@ -43,7 +43,7 @@ class ChatEventShowTextImpl implements ChatEventShowText
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventShowTextImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 
     @Override
@@ -34,6 +34,6 @@ class ChatEventSuggestCommandImpl extends ChatEventStringAbstract implements Cha
     @Override
     public ChatMessageEvent duplicate()
     {
-        return new ChatEventSuggestCommandImpl(this.value);
+        return this; // event is immutable, so it can be shared.
     }
 }
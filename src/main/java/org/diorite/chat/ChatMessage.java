@@ -24,6 +24,11 @@
 
 package org.diorite.chat;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
 import com.google.gson.JsonElement;
 
 /**
@@ -82,16 +87,131 @@ public interface ChatMessage extends Cloneable
 //    ChatMessage[] split(String token, int max);
 
     String toLegacyText();
+
+    /**
+     * Writes legacy representation of this message with color codes to given appendable.
+     *
+     * @param appendable
+     *         appendable to write legacy text to.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    default void toLegacyText(Appendable appendable) throws IOException
+    {
+        appendable.append(this.toLegacyText());
+    }
     String toPlainText();
     String toJson();
+
+    /**
+     * Writes json representation of this message to given appendable.
+     *
+     * @param appendable
+     *         appendable to write json to.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    default void toJson(Appendable appendable) throws IOException
+    {
+        appendable.append(this.toJson());
+    }
     JsonElement toJsonElement();
+
+    /**
+     * Returns json representation of this message encoded in UTF-8. <br>
+     * Returned array might be cached by implementation, so it must not be modified.
+     *
+     * @return json representation of this message encoded in UTF-8.
+     */
+    default byte[] toJsonBytes()
+    {
+        return this.toJson().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns serialized form of this message for given flavor, like version of protocol used by client. <br>
+     * Implementation might cache result until message is changed, so serializer must always return this same result for this same message
+     * and flavor, this allows to serialize message only once when it is send to many receivers.
+     *
+     * @param flavor
+     *         flavor of serialized form, used as key of cache.
+     * @param serializer
+     *         function that serialize message.
+     * @param <T>
+     *         type of serialized form.
+     *
+     * @return serialized form of this message.
+     */
+    default <T> T getSerialized(Object flavor, Function<? super ChatMessage, ? extends T> serializer)
+    {
+        return serializer.apply(this);
+    }
 //    String toMarkup();
 
+    /**
+     * Read chat message from legacy text with color codes, like {@code "\u00A7aHello \u00A7lworld"}. <br>
+     * Text is split into nodes only where style changes, urls in text are not changed to links.
+     *
+     * @param s
+     *         legacy text to read.
+     *
+     * @return created chat message.
+     */
     static ChatMessage fromLegacy(String s)
     {
-        return new ChatMessageImpl();
+        return LegacyTextReader.read(s, false);
+    }
+
+    /**
+     * Read chat message from legacy text with color codes, like {@code "\u00A7aHello \u00A7lworld"}. <br>
+     * Text is split into nodes only where style changes.
+     *
+     * @param s
+     *         legacy text to read.
+     * @param links
+     *         if urls in text should be changed to clickable links.
+     *
+     * @return created chat message.
+     */
+    static ChatMessage fromLegacy(String s, boolean links)
+    {
+        return LegacyTextReader.read(s, links);
     }
     static ChatMessage fromString(String s) {return null;}
     //    static ChatMessage fromMarkup(String s) {return null;}
-    static ChatMessage fromJson(String s) {return null;}
+    /**
+     * Read chat message from json used by minecraft client.
+     *
+     * @param s
+     *         json representation of message.
+     *
+     * @return read message.
+     *
+     * @throws IllegalArgumentException
+     *         if given string isn't valid message.
+     */
+    static ChatMessage fromJson(String s)
+    {
+        return ComponentJsonReader.read(s);
+    }
+
+    /**
+     * Read chat message from json used by minecraft client, given reader isn't closed.
+     *
+     * @param reader
+     *         source of json representation of message.
+     *
+     * @return read message.
+     *
+     * @throws IOException
+     *         if reader throws exception or json is malformed.
+     * @throws IllegalArgumentException
+     *         if json does not represent valid message.
+     */
+    static ChatMessage fromJson(Reader reader) throws IOException
+    {
+        return ComponentJsonReader.read(reader);
+    }
 }
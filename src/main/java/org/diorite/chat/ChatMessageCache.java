@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Serialized forms of single {@link ChatMessageImpl}, whole cache is dropped by message on any change and on change of style of its parents,
+ * as legacy text depends on it. <br>
+ * Values might be computed more than once when used from many threads at once, but each computed value is correct, so it is safe to use
+ * without locking. Only first stored value of each serialized flavor is kept, and it is returned to all callers.
+ */
+final class ChatMessageCache
+{
+    private static final Object[] EMPTY = new Object[0];
+
+    @Nullable private volatile String json;
+    @Nullable private volatile byte[] jsonBytes;
+
+    // flavors and serialized values stored one after another, array is replaced on each change.
+    private volatile Object[] flavors = EMPTY;
+
+    String getJson(ChatMessageImpl message)
+    {
+        String json = this.json;
+        if (json == null)
+        {
+            json = ComponentJsonWriter.toJson(message);
+            this.json = json;
+        }
+        return json;
+    }
+
+    byte[] getJsonBytes(ChatMessageImpl message)
+    {
+        byte[] jsonBytes = this.jsonBytes;
+        if (jsonBytes == null)
+        {
+            jsonBytes = this.getJson(message).getBytes(StandardCharsets.UTF_8);
+            this.jsonBytes = jsonBytes;
+        }
+        return jsonBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T getSerialized(ChatMessageImpl message, Object flavor, Function<? super ChatMessage, ? extends T> serializer)
+    {
+        Object[] current = this.flavors;
+        int index = indexOf(current, flavor);
+        if (index != - 1)
+        {
+            return (T) current[index + 1];
+        }
+        // serializer is invoked without lock, so other flavors are not blocked, value added by other thread in meantime is used instead.
+        T serialized = serializer.apply(message);
+        synchronized (this)
+        {
+            Object[] flavors = this.flavors;
+            index = indexOf(flavors, flavor);
+            if (index != - 1)
+            {
+                return (T) flavors[index + 1];
+            }
+            Object[] newFlavors = Arrays.copyOf(flavors, flavors.length + 2);
+            newFlavors[flavors.length] = flavor;
+            newFlavors[flavors.length + 1] = serialized;
+            this.flavors = newFlavors;
+        }
+        return serialized;
+    }
+
+    private static int indexOf(Object[] flavors, Object flavor)
+    {
+        for (int i = 0; i < flavors.length; i += 2)
+        {
+            if (flavors[i].equals(flavor))
+            {
+                return i;
+            }
+        }
+        return - 1;
+    }
+}
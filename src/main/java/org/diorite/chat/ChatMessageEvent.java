@@ -32,7 +32,9 @@ import org.diorite.nbt.NbtTag;
 public interface ChatMessageEvent
 {
     /**
-     * Returns copy of this event.
+     * Returns copy of this event. <br>
+     * Events are immutable value objects, so they are shared between components and this method returns this same instance, only mutable
+     * events used by parser are copied.
      *
      * @return copy of this event.
      */
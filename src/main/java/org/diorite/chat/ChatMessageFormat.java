@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format of serialized chat message supported by receiver.
+ */
+public enum ChatMessageFormat
+{
+    /**
+     * Json format used by modern clients.
+     */
+    JSON
+            {
+                @Override
+                public byte[] serialize(ChatMessage message)
+                {
+                    return message.toJsonBytes();
+                }
+            },
+    /**
+     * Legacy text with color codes.
+     */
+    LEGACY
+            {
+                @Override
+                public byte[] serialize(ChatMessage message)
+                {
+                    return message.getSerialized(LEGACY, m -> m.toLegacyText().getBytes(StandardCharsets.UTF_8));
+                }
+            };
+
+    /**
+     * Returns given message serialized to this format and encoded in UTF-8. <br>
+     * Returned array might be cached by message, so it must not be modified.
+     *
+     * @param message
+     *         message to serialize.
+     *
+     * @return serialized message.
+     */
+    public abstract byte[] serialize(ChatMessage message);
+}
@@ -26,12 +26,53 @@ package org.diorite.chat;
 
 import javax.annotation.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 class ChatMessageImpl extends BaseComponentElement<ChatMessageImpl, ChatMessageEvent, ChatEventAppendChat> implements ChatMessage
 {
-    @Nullable Object cache; // for chat service implementation.
+    @Nullable volatile ChatMessageCache cache; // for chat service implementation.
+
+    ChatMessageCache getCache()
+    {
+        ChatMessageCache cache = this.cache;
+        if (cache == null)
+        {
+            cache = new ChatMessageCache();
+            this.cache = cache;
+        }
+        return cache;
+    }
+
+    @Override
+    void invalidate()
+    {
+        // json of parent contains this element too.
+        for (ChatMessageImpl element = this; element != null; element = element.parent)
+        {
+            element.cache = null;
+        }
+    }
+
+    @Override
+    void invalidateStyle()
+    {
+        // legacy text of children depends on style of parents, writing it resolves style of all parents, so every child with cached legacy
+        // text is reached by this walk.
+        this.cache = null;
+        super.invalidateStyle();
+    }
+
+    @Override
+    void invalidateTree()
+    {
+        this.cache = null;
+        super.invalidateTree();
+    }
 
     @Override
     public void sendTo(ChatMessageType type, MessageReceiver messageReceiver)
@@ -72,7 +113,7 @@ class ChatMessageImpl extends BaseComponentElement<ChatMessageImpl, ChatMessageE
     @Override
     public ChatMessageImpl duplicate()
     {
-        return null;
+        return super.duplicate();
     }
 
     @Override
@@ -83,62 +124,15 @@ class ChatMessageImpl extends BaseComponentElement<ChatMessageImpl, ChatMessageE
         return builder.toString();
     }
 
-    /**
-     * Adds color codes of this element to given string builder.
-     *
-     * @param builder
-     *         string builder to be used.
-     */
-    void addFormat(StringBuilder builder)
-    {
-        ChatColor color = this.color;
-        if (color != null)
-        {
-            builder.append(color);
-        }
-        if (this.isBold())
-        {
-            builder.append(ChatColor.BOLD);
-        }
-        if (this.isItalic())
-        {
-            builder.append(ChatColor.ITALIC);
-        }
-        if (this.isUnderlined())
-        {
-            builder.append(ChatColor.UNDERLINE);
-        }
-        if (this.isStrikethrough())
-        {
-            builder.append(ChatColor.STRIKETHROUGH);
-        }
-        if (this.isObfuscated())
-        {
-            builder.append(ChatColor.OBFUSCATE);
-        }
-    }
-
     public void toLegacyText(StringBuilder builder)
     {
-        this.addFormat(builder);
-        if (this.text != null)
+        try
         {
-            builder.append(this.text);
+            LegacyTextWriter.write(this, builder);
         }
-        else if (this.selector != null)
+        catch (IOException e)
         {
-            builder.append(this.selector);
-        }
-        else if (this.translate != null)
-        {
-            builder.append(this.translate);
-        }
-        if (this.extra != null)
-        {
-            for (ChatMessageImpl message : this.extra)
-            {
-                message.toLegacyText(builder);
-            }
+            throw new UncheckedIOException(e); // string builder does not throw any exceptions.
         }
     }
 
@@ -176,14 +170,24 @@ class ChatMessageImpl extends BaseComponentElement<ChatMessageImpl, ChatMessageE
     @Override
     public String toJson()
     {
-        return null;
+        return this.getCache().getJson(this);
+    }
+
+    @Override
+    public byte[] toJsonBytes()
+    {
+        return this.getCache().getJsonBytes(this);
+    }
+
+    @Override
+    public <T> T getSerialized(Object flavor, Function<? super ChatMessage, ? extends T> serializer)
+    {
+        return this.getCache().getSerialized(this, flavor, serializer);
     }
 
     @Override
     public JsonElement toJsonElement()
     {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("text", "NOT IMPLEMENTED YET, DIORITE CORPORAJT 2017");
-        return jsonObject;
+        return new JsonParser().parse(this.toJson());
     }
 }
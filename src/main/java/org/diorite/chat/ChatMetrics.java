@@ -0,0 +1,350 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead statistics of chat processing, time of each stage is recorded separately for each message type. <br>
+ * All counters are striped ({@link LongAdder}), so recording from many threads does not contend on single variable, and time of each stage is
+ * also recorded in histogram with power of two buckets. Stages that don't know type of message (like parsing) are recorded without type. <br>
+ * Metrics can be registered in {@link ParserSettings} and returned by {@link ChatService#getMetrics()}, current values are exported using
+ * {@link #snapshot()}.
+ */
+public final class ChatMetrics
+{
+    /**
+     * Amount of histogram buckets, bucket {@code i} counts stages that took from {@code 2^(i-1)} (inclusive) to {@code 2^i} (exclusive) nanos.
+     */
+    public static final int BUCKETS = 64;
+
+    private static final ChatMessageType[] TYPES = ChatMessageType.values();
+    private static final Stage[]           STAGES = Stage.values();
+
+    // index of type is ordinal of message type, last index is used by stages without type.
+    private final StageCounter[] counters = new StageCounter[(TYPES.length + 1) * STAGES.length];
+
+    public ChatMetrics()
+    {
+        for (int i = 0; i < this.counters.length; i++)
+        {
+            this.counters[i] = new StageCounter();
+        }
+    }
+
+    /**
+     * Record single execution of given stage.
+     *
+     * @param stage
+     *         recorded stage.
+     * @param type
+     *         type of processed message, or null if unknown.
+     * @param nanos
+     *         time of stage in nanoseconds.
+     * @param amount
+     *         amount of processed data, meaning depends on stage, see {@link Stage}.
+     */
+    public void record(Stage stage, @Nullable ChatMessageType type, long nanos, long amount)
+    {
+        this.counters[index(stage, type)].record(nanos, amount);
+    }
+
+    /**
+     * Returns snapshot of current values of all counters. <br>
+     * Counters are read without stopping other threads, so snapshot taken during recording might be slightly inconsistent.
+     *
+     * @return snapshot of current values.
+     */
+    public Snapshot snapshot()
+    {
+        StageSnapshot[] snapshots = new StageSnapshot[this.counters.length];
+        for (int i = 0; i < snapshots.length; i++)
+        {
+            snapshots[i] = this.counters[i].snapshot();
+        }
+        return new Snapshot(snapshots);
+    }
+
+    /**
+     * Reset all counters.
+     */
+    public void reset()
+    {
+        for (StageCounter counter : this.counters)
+        {
+            counter.reset();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChatMetrics{" + this.snapshot() + "}";
+    }
+
+    private static int index(Stage stage, @Nullable ChatMessageType type)
+    {
+        return (((type == null) ? TYPES.length : type.ordinal()) * STAGES.length) + stage.ordinal();
+    }
+
+    static int bucket(long nanos)
+    {
+        return (nanos <= 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * Stages of chat processing.
+     */
+    public enum Stage
+    {
+        /**
+         * Parsing of markup text, amount is length of parsed text.
+         */
+        PARSE,
+        /**
+         * Optimization of parsed message, amount is amount of nodes removed by optimizer.
+         */
+        OPTIMIZE,
+        /**
+         * Serialization of message, amount is size of serialized message (in bytes for payloads and in chars for json strings).
+         */
+        SERIALIZE,
+        /**
+         * Filters of {@link MessageOutput} invoked for single message, amount is amount of invoked filters.
+         */
+        FILTER
+    }
+
+    private static final class StageCounter
+    {
+        private final LongAdder   count  = new LongAdder();
+        private final LongAdder   nanos  = new LongAdder();
+        private final LongAdder   amount = new LongAdder();
+        private final LongAdder[] histogram;
+
+        private StageCounter()
+        {
+            this.histogram = new LongAdder[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                this.histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos, long amount)
+        {
+            this.count.increment();
+            this.nanos.add(nanos);
+            this.amount.add(amount);
+            this.histogram[bucket(nanos)].increment();
+        }
+
+        private StageSnapshot snapshot()
+        {
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                histogram[i] = this.histogram[i].sum();
+            }
+            return new StageSnapshot(this.count.sum(), this.nanos.sum(), this.amount.sum(), histogram);
+        }
+
+        private void reset()
+        {
+            this.count.reset();
+            this.nanos.reset();
+            this.amount.reset();
+            for (LongAdder bucket : this.histogram)
+            {
+                bucket.reset();
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of all counters.
+     */
+    public static final class Snapshot
+    {
+        private final StageSnapshot[] stages;
+
+        private Snapshot(StageSnapshot[] stages)
+        {
+            this.stages = stages;
+        }
+
+        /**
+         * Returns values of given stage for given type of message.
+         *
+         * @param stage
+         *         stage to get.
+         * @param type
+         *         type of message, or null for stages recorded without type.
+         *
+         * @return values of given stage.
+         */
+        public StageSnapshot get(Stage stage, @Nullable ChatMessageType type)
+        {
+            return this.stages[index(stage, type)];
+        }
+
+        /**
+         * Returns values of given stage summed for all types of messages, including stages recorded without type.
+         *
+         * @param stage
+         *         stage to get.
+         *
+         * @return values of given stage.
+         */
+        public StageSnapshot get(Stage stage)
+        {
+            StageSnapshot total = this.get(stage, null);
+            for (ChatMessageType type : TYPES)
+            {
+                total = total.add(this.get(stage, type));
+            }
+            return total;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder(128);
+            for (Stage stage : STAGES)
+            {
+                if (sb.length() != 0)
+                {
+                    sb.append(", ");
+                }
+                sb.append(stage.name().toLowerCase(Locale.ROOT)).append('=').append(this.get(stage));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Immutable values of single stage.
+     */
+    public static final class StageSnapshot
+    {
+        private final long   count;
+        private final long   nanos;
+        private final long   amount;
+        private final long[] histogram;
+
+        private StageSnapshot(long count, long nanos, long amount, long[] histogram)
+        {
+            this.count = count;
+            this.nanos = nanos;
+            this.amount = amount;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Returns amount of recorded executions of stage.
+         *
+         * @return amount of recorded executions.
+         */
+        public long getCount()
+        {
+            return this.count;
+        }
+
+        /**
+         * Returns total time of all executions of stage in nanoseconds.
+         *
+         * @return total time in nanoseconds.
+         */
+        public long getNanos()
+        {
+            return this.nanos;
+        }
+
+        /**
+         * Returns total amount of data processed by stage, see {@link Stage} for meaning of amount.
+         *
+         * @return total amount of processed data.
+         */
+        public long getAmount()
+        {
+            return this.amount;
+        }
+
+        /**
+         * Returns amount of executions recorded in given histogram bucket.
+         *
+         * @param bucket
+         *         index of bucket, from 0 to {@link #BUCKETS} (exclusive).
+         *
+         * @return amount of executions in bucket.
+         */
+        public long getBucket(int bucket)
+        {
+            return this.histogram[bucket];
+        }
+
+        /**
+         * Returns upper bound of time (in nanoseconds) of given fraction of executions, based on histogram.
+         *
+         * @param quantile
+         *         fraction of executions, from 0 to 1.
+         *
+         * @return upper bound of time in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long getQuantile(double quantile)
+        {
+            long rank = (long) Math.ceil(quantile * this.count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                seen += this.histogram[i];
+                if ((seen >= rank) && (seen != 0))
+                {
+                    return (i == (BUCKETS - 1)) ? Long.MAX_VALUE : (1L << i);
+                }
+            }
+            return 0;
+        }
+
+        private StageSnapshot add(StageSnapshot other)
+        {
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                histogram[i] = this.histogram[i] + other.histogram[i];
+            }
+            return new StageSnapshot(this.count + other.count, this.nanos + other.nanos, this.amount + other.amount, histogram);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "{count=" + this.count + ", nanos=" + this.nanos + ", amount=" + this.amount + ", p50=" + this.getQuantile(0.5) + ", p99=" +
+                   this.getQuantile(0.99) + "}";
+        }
+    }
+}
@@ -24,6 +24,12 @@
 
 package org.diorite.chat;
 
+import javax.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
 import org.diorite.config.serialization.Serialization;
 import org.diorite.config.serialization.StringSerializer;
 
@@ -58,6 +64,79 @@ public interface ChatService
      */
     void sendMessage(ChatMessageType type, MessageReceiver messageReceiver, ChatMessage message);
 
+    /**
+     * Sends given message to all given receivers. <br>
+     * Receivers are grouped by format returned by {@link #getMessageFormat(MessageReceiver)} and by their preferred locale, message is
+     * serialized only once for each format and each group is passed to {@link #sendSerialized(ChatMessageType, ChatMessage, ChatMessageFormat,
+     * Locale, ByteBuffer, List)} with shared payload.
+     *
+     * @param type
+     *         type of message.
+     * @param receivers
+     *         receivers of message.
+     * @param message
+     *         message to send.
+     */
+    default void broadcast(ChatMessageType type, Iterable<? extends MessageReceiver> receivers, ChatMessage message)
+    {
+        ChatServiceHandler.broadcast(this, type, receivers, message);
+    }
+
+    /**
+     * Returns format of messages supported by given receiver, or null if messages to this receiver can't use shared payload and must be
+     * send using {@link #sendMessage(ChatMessageType, MessageReceiver, ChatMessage)}, like when output of receiver use filters.
+     *
+     * @param receiver
+     *         receiver to check.
+     *
+     * @return format of messages supported by given receiver.
+     */
+    @Nullable
+    default ChatMessageFormat getMessageFormat(MessageReceiver receiver)
+    {
+        return ChatMessageFormat.JSON;
+    }
+
+    /**
+     * Returns metrics used to record statistics of messages processed by this service, or null if statistics aren't recorded. <br>
+     * Time of message serialization in {@link #broadcast(ChatMessageType, Iterable, ChatMessage)} is recorded there.
+     *
+     * @return metrics of this service.
+     */
+    @Nullable
+    default ChatMetrics getMetrics()
+    {
+        return null;
+    }
+
+    /**
+     * Sends serialized message to group of receivers with this same format and locale. <br>
+     * Payload is read-only buffer shared by whole group, implementation should use {@link ByteBuffer#duplicate()} if it needs to change
+     * position of buffer. <br>
+     * Default implementation just sends message to each receiver using {@link #sendMessage(ChatMessageType, MessageReceiver, ChatMessage)}.
+     *
+     * @param type
+     *         type of message.
+     * @param message
+     *         message to send.
+     * @param format
+     *         format of serialized message.
+     * @param locale
+     *         preferred locale of all receivers in group.
+     * @param payload
+     *         serialized message, encoded in UTF-8.
+     * @param receivers
+     *         receivers of message.
+     */
+    default void sendSerialized(ChatMessageType type, ChatMessage message, ChatMessageFormat format, @Nullable Locale locale, ByteBuffer payload,
+                                List<? extends MessageReceiver> receivers)
+    {
+        for (MessageReceiver receiver : receivers)
+        {
+            this.sendMessage(type, receiver, message);
+        }
+    }
+
     /**
      * Returns instance of chat service.
      *
@@ -26,9 +26,91 @@ package org.diorite.chat;
 
 import javax.annotation.Nullable;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
 final class ChatServiceHandler
 {
     @Nullable static ChatService chatService;
 
     private ChatServiceHandler() {}
+
+    static void broadcast(ChatService service, ChatMessageType type, Iterable<? extends MessageReceiver> receivers, ChatMessage message)
+    {
+        // usually there is only few groups, so simple list is faster than map with composite keys.
+        List<BroadcastGroup> groups = new ArrayList<>(4);
+        ByteBuffer[] payloads = new ByteBuffer[ChatMessageFormat.values().length];
+        for (MessageReceiver receiver : receivers)
+        {
+            MessageOutput output = receiver.getOutput();
+            if (output == MessageOutput.IGNORE)
+            {
+                continue;
+            }
+            ChatMessageFormat format = service.getMessageFormat(receiver);
+            if (format == null)
+            {
+                service.sendMessage(type, receiver, message);
+                continue;
+            }
+            Locale locale = (receiver instanceof LocalizedMessageReceiver) ? ((LocalizedMessageReceiver) receiver).getPreferredLocale()
+                                                                           : output.getPreferredLocale();
+            BroadcastGroup group = null;
+            for (BroadcastGroup broadcastGroup : groups)
+            {
+                if ((broadcastGroup.format == format) && Objects.equals(broadcastGroup.locale, locale))
+                {
+                    group = broadcastGroup;
+                    break;
+                }
+            }
+            if (group == null)
+            {
+                ByteBuffer payload = payloads[format.ordinal()];
+                if (payload == null)
+                {
+                    payload = ByteBuffer.wrap(serialize(service, type, format, message)).asReadOnlyBuffer();
+                    payloads[format.ordinal()] = payload;
+                }
+                group = new BroadcastGroup(format, locale, payload);
+                groups.add(group);
+            }
+            group.receivers.add(receiver);
+        }
+        for (BroadcastGroup group : groups)
+        {
+            service.sendSerialized(type, message, group.format, group.locale, group.payload, group.receivers);
+        }
+    }
+
+    private static byte[] serialize(ChatService service, ChatMessageType type, ChatMessageFormat format, ChatMessage message)
+    {
+        ChatMetrics metrics = service.getMetrics();
+        if (metrics == null)
+        {
+            return format.serialize(message);
+        }
+        long start = System.nanoTime();
+        byte[] payload = format.serialize(message);
+        metrics.record(ChatMetrics.Stage.SERIALIZE, type, System.nanoTime() - start, payload.length);
+        return payload;
+    }
+
+    private static final class BroadcastGroup
+    {
+        private final           ChatMessageFormat     format;
+        private final @Nullable Locale                locale;
+        private final           ByteBuffer            payload;
+        private final           List<MessageReceiver> receivers = new ArrayList<>(16);
+
+        private BroadcastGroup(ChatMessageFormat format, @Nullable Locale locale, ByteBuffer payload)
+        {
+            this.format = format;
+            this.locale = locale;
+            this.payload = payload;
+        }
+    }
 }
@@ -0,0 +1,609 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message markup compiled once to component tree with placeholder slots, so it can be filled with different values many times without parsing it
+ * again. <br>
+ * Placeholders are written as <code>{key}</code>, where key may contain letters, digits and <code>_ - .</code> chars, placeholder preceded by
+ * backslash is left as normal text. Placeholders can be used in text and in string values of events, like commands, urls and insertions. <br>
+ * Type of event is chosen by markup when template is compiled and placeholder only replaces its value, so it can't change type of event:
+ * <code>[text]({page})</code> always creates open url event, even if it is filled with page number, and <code>[text]({command})</code>
+ * filled with <code>/command</code> does not suggest command, prefix must be written in template instead, like <code>[text](/{command})</code>.
+ * Page links can't use placeholders, as page number is not a string value. <br>
+ * Each distinct key gets own index, in order of first occurrence, values passed to {@link #fill(Object...)} are ordered by these indexes.
+ */
+public final class ChatTemplate
+{
+    // placeholders are replaced by noncharacters before parsing, so they are never treated as markup or part of url, index of key is written
+    // between marker chars as hex digits.
+    private static final char MARKER_START = '\uFDD0';
+    private static final char MARKER_END   = '\uFDD1';
+    private static final char MARKER_DIGIT = '\uFDE0';
+
+    private final CompactComponentTree tree;
+    private final String[]             keys;
+    private final Map<String, Integer> keyIndexes;
+    // slots of each node, null if template does not contain any placeholders.
+    @Nullable
+    private final NodeSlot[]           slots;
+
+    private ChatTemplate(CompactComponentTree tree, String[] keys, Map<String, Integer> keyIndexes, @Nullable NodeSlot[] slots)
+    {
+        this.tree = tree;
+        this.keys = keys;
+        this.keyIndexes = keyIndexes;
+        this.slots = slots;
+    }
+
+    /**
+     * Returns keys of placeholders used in this template, ordered by index.
+     *
+     * @return keys of placeholders.
+     */
+    public List<String> getKeys()
+    {
+        return Collections.unmodifiableList(Arrays.asList(this.keys));
+    }
+
+    /**
+     * Returns amount of distinct placeholder keys in this template.
+     *
+     * @return amount of placeholder keys.
+     */
+    public int getKeyCount()
+    {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns index of given placeholder key, or -1 if this template does not use that key.
+     *
+     * @param key
+     *         key of placeholder.
+     *
+     * @return index of placeholder key.
+     */
+    public int getKeyIndex(String key)
+    {
+        Integer index = this.keyIndexes.get(key);
+        return (index == null) ? - 1 : index;
+    }
+
+    /**
+     * Create new message from this template, using given values for placeholders. <br>
+     * Values are ordered by index of key, {@link ChatMessage} values are inserted to text as components and as plain text to events, other
+     * values are converted using {@link String#valueOf(Object)}. Missing or null values leave placeholder unchanged.
+     *
+     * @param values
+     *         values of placeholders.
+     *
+     * @return created message.
+     */
+    public ChatMessage fill(Object... values)
+    {
+        return this.fill(new ArrayValues(values));
+    }
+
+    /**
+     * Create new message from this template, using values provided by given source for placeholders.
+     *
+     * @param values
+     *         source of placeholder values by index of key.
+     *
+     * @return created message.
+     */
+    public ChatMessage fill(Values values)
+    {
+        NodeSlot[] slots = this.slots;
+        if (slots == null)
+        {
+            return this.tree.toChatMessage();
+        }
+        return this.tree.toChatMessage((element, node) ->
+                                       {
+                                           NodeSlot slot = slots[node];
+                                           if (slot != null)
+                                           {
+                                               slot.fill(element, this.keys, values);
+                                           }
+                                       });
+    }
+
+    /**
+     * Returns json of this template, with placeholders left as text.
+     *
+     * @return json of template.
+     */
+    public String toJson()
+    {
+        return this.tree.toJson();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChatTemplate{keys=" + Arrays.toString(this.keys) + ", json=" + this.tree.toJson() + "}";
+    }
+
+    /**
+     * Compile given markup to template using given settings.
+     *
+     * @param markup
+     *         markup with placeholders.
+     * @param settings
+     *         settings of parser, null for default settings.
+     *
+     * @return compiled template.
+     *
+     * @throws IllegalArgumentException
+     *         if markup contains reserved noncharacters used internally to mark placeholders.
+     */
+    public static ChatTemplate compile(String markup, @Nullable ParserSettings settings)
+    {
+        return compile(markup, CompiledParser.of(settings));
+    }
+
+    /**
+     * Compile given markup to template using given parser.
+     *
+     * @param markup
+     *         markup with placeholders.
+     * @param compiledParser
+     *         parser to use.
+     *
+     * @return compiled template.
+     *
+     * @throws IllegalArgumentException
+     *         if markup contains reserved noncharacters used internally to mark placeholders.
+     */
+    public static ChatTemplate compile(String markup, CompiledParser compiledParser)
+    {
+        List<String> keys = new ArrayList<>(4);
+        Map<String, Integer> keyIndexes = new HashMap<>(8);
+        String text = markPlaceholders(markup, keys, keyIndexes);
+        ComponentElement root = compiledParser.parseElement(text);
+        String[] keysArray = keys.toArray(new String[keys.size()]);
+        if (keysArray.length == 0)
+        {
+            return new ChatTemplate(CompactComponentTree.of(root), keysArray, keyIndexes, null);
+        }
+
+        Map<ComponentElement, NodeSlot> elementSlots = new IdentityHashMap<>(16);
+        createSlots(root, keysArray, elementSlots);
+        CompactComponentTree tree = CompactComponentTree.of(root);
+        NodeSlot[] slots = new NodeSlot[tree.size()];
+        assignSlots(root, 0, elementSlots, slots);
+        return new ChatTemplate(tree, keysArray, keyIndexes, slots);
+    }
+
+    private static String markPlaceholders(String markup, List<String> keys, Map<String, Integer> keyIndexes)
+    {
+        int length = markup.length();
+        StringBuilder sb = new StringBuilder(length + 16);
+        int backslashes = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = markup.charAt(i);
+            if ((c >= MARKER_START) && (c <= (MARKER_DIGIT + 0xF)))
+            {
+                throw new IllegalArgumentException("Markup contains reserved character at index " + i + ": " + markup);
+            }
+            if ((c == '{') && ((backslashes & 1) == 0))
+            {
+                int end = i + 1;
+                while ((end < length) && isKeyChar(markup.charAt(end)))
+                {
+                    end++;
+                }
+                if ((end > (i + 1)) && (end < length) && (markup.charAt(end) == '}'))
+                {
+                    String key = markup.substring(i + 1, end);
+                    Integer index = keyIndexes.get(key);
+                    if (index == null)
+                    {
+                        index = keys.size();
+                        keys.add(key);
+                        keyIndexes.put(key, index);
+                    }
+                    sb.append(MARKER_START);
+                    appendIndex(sb, index);
+                    sb.append(MARKER_END);
+                    i = end;
+                    backslashes = 0;
+                    continue;
+                }
+            }
+            backslashes = (c == '\\') ? (backslashes + 1) : 0;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isKeyChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '-') || (c == '.');
+    }
+
+    private static void appendIndex(StringBuilder sb, int index)
+    {
+        int shift = (index == 0) ? 0 : (((31 - Integer.numberOfLeadingZeros(index)) / 4) * 4);
+        for (; shift >= 0; shift -= 4)
+        {
+            sb.append((char) (MARKER_DIGIT + ((index >>> shift) & 0xF)));
+        }
+    }
+
+    // returns index of first marker char, marker may be missing its start char, as some elements always consume next char after them.
+    private static int indexOfMarker(String text, int from)
+    {
+        for (int i = from, length = text.length(); i < length; i++)
+        {
+            char c = text.charAt(i);
+            if ((c >= MARKER_START) && (c <= (MARKER_DIGIT + 0xF)))
+            {
+                return i;
+            }
+        }
+        return - 1;
+    }
+
+    // returns index of key of marker starting at given index.
+    private static int readIndex(String text, int start, int end)
+    {
+        int index = 0;
+        for (int i = (text.charAt(start) == MARKER_START) ? (start + 1) : start; i < end; i++)
+        {
+            index = (index << 4) | (text.charAt(i) - MARKER_DIGIT);
+        }
+        return index;
+    }
+
+    private static String placeholder(String key)
+    {
+        return "{" + key + "}";
+    }
+
+    private static void createSlots(ComponentElement element, String[] keys, Map<ComponentElement, NodeSlot> elementSlots)
+    {
+        EventSlot insertion = EventSlot.of(element.insertion, keys);
+        EventSlot hover = EventSlot.of(element.hoverEvent, keys);
+        EventSlot click = EventSlot.of(element.clickEvent, keys);
+        if ((insertion != null) || (hover != null) || (click != null))
+        {
+            // template itself is serialized with placeholders restored.
+            if (insertion != null)
+            {
+                element.insertion = (ChatEventAppendChat) insertion.create(keys, null);
+            }
+            if (hover != null)
+            {
+                element.hoverEvent = hover.create(keys, null);
+            }
+            if (click != null)
+            {
+                element.clickEvent = click.create(keys, null);
+            }
+            elementSlots.put(element, new NodeSlot(- 1, insertion, hover, click));
+        }
+
+        List<ComponentElement> children = element.extra;
+        if (children != null)
+        {
+            for (ComponentElement child : children)
+            {
+                createSlots(child, keys, elementSlots);
+            }
+        }
+
+        String text = element.text;
+        int marker = (text == null) ? - 1 : indexOfMarker(text, 0);
+        if (marker != - 1)
+        {
+            // node keeps text before first placeholder, rest of text is split to literal and slot nodes inserted before existing children.
+            List<ComponentElement> extra = new ArrayList<>(4);
+            element.text = text.substring(0, marker);
+            int length = text.length();
+            int i = marker;
+            while (i < length)
+            {
+                ComponentElement child;
+                if (i == indexOfMarker(text, i))
+                {
+                    int end = text.indexOf(MARKER_END, i);
+                    int index = readIndex(text, i, end);
+                    child = new ComponentElement().setText(placeholder(keys[index]));
+                    elementSlots.put(child, new NodeSlot(index, null, null, null));
+                    i = end + 1;
+                }
+                else
+                {
+                    int next = indexOfMarker(text, i);
+                    if (next == - 1)
+                    {
+                        next = length;
+                    }
+                    child = new ComponentElement().setText(text.substring(i, next));
+                    i = next;
+                }
+                child.parent = element;
+                extra.add(child);
+            }
+            if (children != null)
+            {
+                extra.addAll(children);
+            }
+            element.extra = extra;
+        }
+    }
+
+    // nodes of compact tree are stored in pre-order, returns index of next node after subtree of given element.
+    private static int assignSlots(ComponentElement element, int node, Map<ComponentElement, NodeSlot> elementSlots, NodeSlot[] slots)
+    {
+        slots[node] = elementSlots.get(element);
+        int next = node + 1;
+        if (element.extra != null)
+        {
+            for (ComponentElement child : element.extra)
+            {
+                next = assignSlots(child, next, elementSlots, slots);
+            }
+        }
+        return next;
+    }
+
+    static String toText(@Nullable Object value)
+    {
+        if (value instanceof ChatMessage)
+        {
+            return ((ChatMessage) value).toPlainText();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Source of values of placeholders, used to fill template without converting values to objects first.
+     */
+    public interface Values
+    {
+        /**
+         * Returns value of placeholder of given index if it is message that should be inserted to text as component, null otherwise.
+         *
+         * @param index
+         *         index of placeholder key.
+         *
+         * @return message value of placeholder.
+         */
+        @Nullable
+        ChatMessage getMessage(int index);
+
+        /**
+         * Returns text of value of placeholder of given index, or null if there is no value for it.
+         *
+         * @param index
+         *         index of placeholder key.
+         *
+         * @return text of placeholder value.
+         */
+        @Nullable
+        String getText(int index);
+
+        /**
+         * Append text of value of placeholder of given index to given builder.
+         *
+         * @param index
+         *         index of placeholder key.
+         * @param builder
+         *         builder to use.
+         *
+         * @return false if there is no value for this placeholder and nothing was appended.
+         */
+        boolean appendText(int index, StringBuilder builder);
+    }
+
+    private static final class ArrayValues implements Values
+    {
+        private final Object[] values;
+
+        private ArrayValues(Object[] values)
+        {
+            this.values = values;
+        }
+
+        @Nullable
+        private Object get(int index)
+        {
+            return (index < this.values.length) ? this.values[index] : null;
+        }
+
+        @Nullable
+        @Override
+        public ChatMessage getMessage(int index)
+        {
+            Object value = this.get(index);
+            return (value instanceof ChatMessage) ? (ChatMessage) value : null;
+        }
+
+        @Nullable
+        @Override
+        public String getText(int index)
+        {
+            Object value = this.get(index);
+            return (value == null) ? null : toText(value);
+        }
+
+        @Override
+        public boolean appendText(int index, StringBuilder builder)
+        {
+            Object value = this.get(index);
+            if (value == null)
+            {
+                return false;
+            }
+            builder.append(toText(value));
+            return true;
+        }
+    }
+
+    private static final class NodeSlot
+    {
+        // index of key of text placeholder, or -1 if node only contains placeholders in events.
+        private final int key;
+        @Nullable
+        private final EventSlot insertion;
+        @Nullable
+        private final EventSlot hover;
+        @Nullable
+        private final EventSlot click;
+
+        private NodeSlot(int key, @Nullable EventSlot insertion, @Nullable EventSlot hover, @Nullable EventSlot click)
+        {
+            this.key = key;
+            this.insertion = insertion;
+            this.hover = hover;
+            this.click = click;
+        }
+
+        private void fill(ChatMessageImpl element, String[] keys, Values values)
+        {
+            if (this.key != - 1)
+            {
+                ChatMessage message = values.getMessage(this.key);
+                if (message != null)
+                {
+                    element.text = "";
+                    element.addExtra((ChatMessageImpl) message.duplicate());
+                }
+                else
+                {
+                    String text = values.getText(this.key);
+                    element.text = (text == null) ? placeholder(keys[this.key]) : text;
+                }
+            }
+            if (this.insertion != null)
+            {
+                element.insertion = (ChatEventAppendChat) this.insertion.create(keys, values);
+            }
+            if (this.hover != null)
+            {
+                element.hoverEvent = this.hover.create(keys, values);
+            }
+            if (this.click != null)
+            {
+                element.clickEvent = this.click.create(keys, values);
+            }
+        }
+    }
+
+    private static final class EventSlot
+    {
+        private final ChatMessageEvent.Action action;
+        // literal parts of value, there is always one part more than placeholders.
+        private final String[]                parts;
+        private final int[]                   indexes;
+
+        private EventSlot(ChatMessageEvent.Action action, String[] parts, int[] indexes)
+        {
+            this.action = action;
+            this.parts = parts;
+            this.indexes = indexes;
+        }
+
+        private ChatMessageEvent create(String[] keys, @Nullable Values values)
+        {
+            StringBuilder sb = new StringBuilder(64);
+            for (int i = 0; i < this.indexes.length; i++)
+            {
+                int index = this.indexes[i];
+                sb.append(this.parts[i]);
+                if ((values == null) || ! values.appendText(index, sb))
+                {
+                    sb.append('{').append(keys[index]).append('}');
+                }
+            }
+            sb.append(this.parts[this.indexes.length]);
+            String value = sb.toString();
+            switch (this.action)
+            {
+                case OPEN_URL:
+                    return ChatMessageEvent.openURL(value);
+                case OPEN_FILE:
+                    return ChatMessageEvent.openFile(value);
+                case RUN_COMMAND:
+                    return ChatMessageEvent.runCommand(value);
+                case SUGGEST_COMMAND:
+                    return ChatMessageEvent.suggestCommand(value);
+                case APPEND_CHAT:
+                    return ChatMessageEvent.appendChat(value);
+                case SHOW_ACHIEVEMENT:
+                    return ChatMessageEvent.showAchievement(value);
+                default:
+                    throw new UnsupportedOperationException("Unsupported action: " + this.action);
+            }
+        }
+
+        @Nullable
+        private static EventSlot of(@Nullable ChatMessageEvent event, String[] keys)
+        {
+            if (! (event instanceof ChatEventStringAbstract))
+            {
+                return null;
+            }
+            String value = ((ChatEventStringAbstract) event).getValue();
+            int marker = indexOfMarker(value, 0);
+            if (marker == - 1)
+            {
+                return null;
+            }
+            List<String> parts = new ArrayList<>(4);
+            List<Integer> indexes = new ArrayList<>(4);
+            int start = 0;
+            while (marker != - 1)
+            {
+                int end = value.indexOf(MARKER_END, marker);
+                parts.add(value.substring(start, marker));
+                indexes.add(readIndex(value, marker, end));
+                start = end + 1;
+                marker = indexOfMarker(value, start);
+            }
+            parts.add(value.substring(start));
+            int[] indexesArray = new int[indexes.size()];
+            for (int i = 0; i < indexesArray.length; i++)
+            {
+                indexesArray[i] = indexes.get(i);
+            }
+            return new EventSlot(event.getAction(), parts.toArray(new String[parts.size()]), indexesArray);
+        }
+    }
+}
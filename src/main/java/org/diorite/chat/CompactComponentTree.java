@@ -0,0 +1,450 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+import org.diorite.KeyBind;
+
+/**
+ * Compact, immutable representation of component tree. <br>
+ * Nodes are stored in pre-order as struct of arrays: type of content, own format packed into single int (see FORMAT_ constants in
+ * {@link BaseComponentElement}), range of shared char buffer used by text, translation key or selector, and size of subtree, so children of
+ * node are stored in range from {@code node + 1} to {@code node + subtreeSize[node]}. <br>
+ * Arrays for events and other content data are only allocated if any node use them, events are shared with source tree. <br>
+ * Parser does not create this tree directly, it still builds tree of {@link ComponentElement} as optimizer changes nodes in place, and that
+ * tree is converted by {@link #of(BaseComponentElement)}. So parsing does not allocate less, compact tree only reduces memory used by
+ * retained messages, like cached and compiled ones, and allows to serialize them without creating elements again.
+ */
+final class CompactComponentTree
+{
+    static final byte CONTENT_NONE      = 0;
+    static final byte CONTENT_TEXT      = 1;
+    static final byte CONTENT_TRANSLATE = 2;
+    static final byte CONTENT_SCORE     = 3;
+    static final byte CONTENT_SELECTOR  = 4;
+    static final byte CONTENT_KEYBIND   = 5;
+
+    static final int EVENT_INSERTION = 0;
+    static final int EVENT_HOVER     = 1;
+    static final int EVENT_CLICK     = 2;
+    static final int EVENTS          = 3;
+
+    final int    size;
+    final char[] chars;
+    // text of node is stored in chars from textOffsets[node] to textOffsets[node + 1].
+    final int[]  textOffsets;
+    final byte[] contents;
+    final int[]  formats;
+    final int[]  subtreeSizes;
+
+    // arguments of translation (String or CompactComponentTree), score or key bind of node.
+    final @Nullable Object[]           data;
+    // insertion, hover and click event of node, stored at node * EVENTS + EVENT_ constant.
+    final @Nullable ChatMessageEvent[] events;
+
+    private CompactComponentTree(int size, char[] chars, int[] textOffsets, byte[] contents, int[] formats, int[] subtreeSizes,
+                                 @Nullable Object[] data, @Nullable ChatMessageEvent[] events)
+    {
+        this.size = size;
+        this.chars = chars;
+        this.textOffsets = textOffsets;
+        this.contents = contents;
+        this.formats = formats;
+        this.subtreeSizes = subtreeSizes;
+        this.data = data;
+        this.events = events;
+    }
+
+    /**
+     * Create compact copy of given component tree.
+     *
+     * @param element
+     *         root of component tree.
+     *
+     * @return compact copy of given tree.
+     */
+    static CompactComponentTree of(BaseComponentElement<?, ?, ?> element)
+    {
+        Builder builder = new Builder();
+        builder.measure(element);
+        builder.allocate();
+        builder.add(element);
+        return builder.build();
+    }
+
+    /**
+     * Returns amount of nodes in this tree.
+     *
+     * @return amount of nodes in this tree.
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns index of next sibling of given node, or index after end of parent subtree if node is last child.
+     *
+     * @param node
+     *         index of node.
+     *
+     * @return index of next sibling of given node.
+     */
+    int next(int node)
+    {
+        return node + this.subtreeSizes[node];
+    }
+
+    /**
+     * Returns text, translation key or selector of given node, null if node does not have any of them.
+     *
+     * @param node
+     *         index of node.
+     *
+     * @return text of given node.
+     */
+    @Nullable
+    String getText(int node)
+    {
+        byte content = this.contents[node];
+        if ((content != CONTENT_TEXT) && (content != CONTENT_TRANSLATE) && (content != CONTENT_SELECTOR))
+        {
+            return null;
+        }
+        int start = this.textOffsets[node];
+        return new String(this.chars, start, this.textOffsets[node + 1] - start);
+    }
+
+    @Nullable
+    Object getData(int node)
+    {
+        return (this.data == null) ? null : this.data[node];
+    }
+
+    @Nullable
+    ChatMessageEvent getEvent(int node, int event)
+    {
+        return (this.events == null) ? null : this.events[(node * EVENTS) + event];
+    }
+
+    /**
+     * Appends text of all nodes to given builder without any formatting.
+     *
+     * @param builder
+     *         builder to use.
+     */
+    void toPlainText(StringBuilder builder)
+    {
+        for (int node = 0; node < this.size; node++)
+        {
+            if (this.contents[node] == CONTENT_TEXT)
+            {
+                int start = this.textOffsets[node];
+                builder.append(this.chars, start, this.textOffsets[node + 1] - start);
+            }
+        }
+    }
+
+    /**
+     * Returns json representation of this tree, json is written directly from arrays without creating any component.
+     *
+     * @return json representation of this tree.
+     */
+    String toJson()
+    {
+        return ComponentJsonWriter.toJson(this);
+    }
+
+    /**
+     * Writes json representation of this tree to given appendable.
+     *
+     * @param out
+     *         output appendable.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    void toJson(Appendable out) throws IOException
+    {
+        ComponentJsonWriter.write(this, 0, out);
+    }
+
+    /**
+     * Create new component tree of {@link ChatMessageImpl} from this tree.
+     *
+     * @return created component tree.
+     */
+    ChatMessageImpl toChatMessage()
+    {
+        return this.toElement(0, ChatMessageImpl::new, null);
+    }
+
+    /**
+     * Create new component tree of {@link ChatMessageImpl} from this tree, each created node is passed to given filler together with index
+     * of its node, before children are added to it.
+     *
+     * @param filler
+     *         function that can change created nodes.
+     *
+     * @return created component tree.
+     */
+    ChatMessageImpl toChatMessage(ObjIntConsumer<ChatMessageImpl> filler)
+    {
+        return this.toElement(0, ChatMessageImpl::new, filler);
+    }
+
+    private <E extends BaseComponentElement<E, ChatMessageEvent, ChatEventAppendChat>> E toElement(int node, Supplier<E> factory,
+                                                                                                 @Nullable ObjIntConsumer<? super E> filler)
+    {
+        E element = factory.get();
+        Object data = this.getData(node);
+        switch (this.contents[node])
+        {
+            case CONTENT_TEXT:
+                element.text = this.getText(node);
+                break;
+            case CONTENT_TRANSLATE:
+                element.translate = this.getText(node);
+                if (data != null)
+                {
+                    Object[] args = (Object[]) data;
+                    List<Object> with = new ArrayList<>(args.length);
+                    for (Object arg : args)
+                    {
+                        with.add((arg instanceof CompactComponentTree) ? ((CompactComponentTree) arg).toElement(0, factory, null) : arg);
+                    }
+                    element.with = with;
+                }
+                break;
+            case CONTENT_SCORE:
+                element.score = (ChatScore) data;
+                break;
+            case CONTENT_SELECTOR:
+                element.selector = this.getText(node);
+                break;
+            case CONTENT_KEYBIND:
+                element.keyBind = (KeyBind) data;
+                break;
+            default:
+                break;
+        }
+        element.setFormat(this.formats[node]);
+        if (this.events != null)
+        {
+            int index = node * EVENTS;
+            element.insertion = (ChatEventAppendChat) this.events[index + EVENT_INSERTION];
+            element.hoverEvent = this.events[index + EVENT_HOVER];
+            element.clickEvent = this.events[index + EVENT_CLICK];
+        }
+        if (filler != null)
+        {
+            filler.accept(element, node);
+        }
+        int end = this.next(node);
+        if (end != (node + 1))
+        {
+            List<E> extra = (element.extra == null) ? new ArrayList<>(4) : element.extra;
+            for (int child = node + 1; child < end; child = this.next(child))
+            {
+                E childElement = this.toElement(child, factory, filler);
+                childElement.parent = element;
+                extra.add(childElement);
+            }
+            element.extra = extra;
+        }
+        return element;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.toJson();
+    }
+
+    private static final class Builder
+    {
+        private int     size;
+        private int     length;
+        private boolean hasData;
+        private boolean hasEvents;
+
+        private int node;
+
+        private char[] chars;
+        private int[]  textOffsets;
+        private byte[] contents;
+        private int[]  formats;
+        private int[]  subtreeSizes;
+
+        private @Nullable Object[]           data;
+        private @Nullable ChatMessageEvent[] events;
+
+        void measure(BaseComponentElement<?, ?, ?> element)
+        {
+            this.size += 1;
+            String text = getText(element);
+            if (text != null)
+            {
+                this.length += text.length();
+            }
+            this.hasData |= (element.translate != null) ? (element.with != null) : ((element.score != null) || (element.keyBind != null));
+            this.hasEvents |= (element.insertion != null) || (element.hoverEvent != null) || (element.clickEvent != null);
+            if (element.extra != null)
+            {
+                for (BaseComponentElement<?, ?, ?> child : element.extra)
+                {
+                    this.measure(child);
+                }
+            }
+        }
+
+        void allocate()
+        {
+            this.chars = new char[this.length];
+            this.textOffsets = new int[this.size + 1];
+            this.contents = new byte[this.size];
+            this.formats = new int[this.size];
+            this.subtreeSizes = new int[this.size];
+            this.data = this.hasData ? new Object[this.size] : null;
+            this.events = this.hasEvents ? new ChatMessageEvent[this.size * EVENTS] : null;
+            this.length = 0;
+        }
+
+        void add(BaseComponentElement<?, ?, ?> element)
+        {
+            int node = this.node++;
+            this.textOffsets[node] = this.length;
+            String text = getText(element);
+            if (text != null)
+            {
+                text.getChars(0, text.length(), this.chars, this.length);
+                this.length += text.length();
+            }
+            this.contents[node] = getContent(element);
+            this.formats[node] = element.getFormat();
+            if (this.data != null)
+            {
+                this.data[node] = getData(element);
+            }
+            if (this.events != null)
+            {
+                int index = node * EVENTS;
+                this.events[index + EVENT_INSERTION] = element.insertion;
+                this.events[index + EVENT_HOVER] = element.hoverEvent;
+                this.events[index + EVENT_CLICK] = element.clickEvent;
+            }
+            if (element.extra != null)
+            {
+                for (BaseComponentElement<?, ?, ?> child : element.extra)
+                {
+                    this.add(child);
+                }
+            }
+            this.subtreeSizes[node] = this.node - node;
+        }
+
+        CompactComponentTree build()
+        {
+            this.textOffsets[this.size] = this.length;
+            return new CompactComponentTree(this.size, this.chars, this.textOffsets, this.contents, this.formats, this.subtreeSizes, this.data,
+                                            this.events);
+        }
+
+        // same priority of content as used by json writer.
+        private static byte getContent(BaseComponentElement<?, ?, ?> element)
+        {
+            if (element.text != null)
+            {
+                return CONTENT_TEXT;
+            }
+            if (element.translate != null)
+            {
+                return CONTENT_TRANSLATE;
+            }
+            if (element.score != null)
+            {
+                return CONTENT_SCORE;
+            }
+            if (element.selector != null)
+            {
+                return CONTENT_SELECTOR;
+            }
+            if (element.keyBind != null)
+            {
+                return CONTENT_KEYBIND;
+            }
+            return CONTENT_NONE;
+        }
+
+        @Nullable
+        private static String getText(BaseComponentElement<?, ?, ?> element)
+        {
+            switch (getContent(element))
+            {
+                case CONTENT_TEXT:
+                    return element.text;
+                case CONTENT_TRANSLATE:
+                    return element.translate;
+                case CONTENT_SELECTOR:
+                    return element.selector;
+                default:
+                    return null;
+            }
+        }
+
+        @Nullable
+        private static Object getData(BaseComponentElement<?, ?, ?> element)
+        {
+            switch (getContent(element))
+            {
+                case CONTENT_TRANSLATE:
+                    if (element.with == null)
+                    {
+                        return null;
+                    }
+                    Object[] args = element.with.toArray();
+                    for (int i = 0; i < args.length; i++)
+                    {
+                        Object arg = args[i];
+                        args[i] = (arg instanceof BaseComponentElement) ? of((BaseComponentElement<?, ?, ?>) arg) : String.valueOf(arg);
+                    }
+                    return args;
+                case CONTENT_SCORE:
+                    return element.score;
+                case CONTENT_KEYBIND:
+                    return element.keyBind;
+                default:
+                    return null;
+            }
+        }
+    }
+}
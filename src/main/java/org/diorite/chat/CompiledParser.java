@@ -0,0 +1,237 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable and thread-safe parser of chat markup compiled for given {@link ParserSettings}. <br>
+ * All markup elements are created only once and each char is dispatched directly to elements that handle it using precomputed lookup table,
+ * so single instance can be used to parse messages from many threads without creating new parser elements for each message.
+ *
+ * @see ParserSettings#getCompiledParser()
+ */
+public final class CompiledParser
+{
+    private static final ParserAbstractElement[] NO_ELEMENTS = new ParserAbstractElement[0];
+
+    final ParserSettings            settings;
+    final ParserAbstractElement[][] handlers;
+    final ParserApplicableElement[] applicableElements;
+    final int                       elementsCount;
+
+    CompiledParser(ParserSettings settings)
+    {
+        this.settings = settings;
+
+        List<ParserAbstractElement> elements = new ArrayList<>(10);
+        if (settings.underlineEnabled)
+        {
+            elements.add(new ParserFormat(elements.size(), '_', (p, e) -> e.setUnderlined(true), (p, e) -> e.isUnderlined()));
+        }
+        if (settings.italicEnabled)
+        {
+            elements.add(new ParserFormat(elements.size(), '/', (p, e) -> e.setItalic(true), (p, e) -> e.isItalic()));
+        }
+        if (settings.boldEnabled)
+        {
+            elements.add(new ParserFormat(elements.size(), '*', (p, e) -> e.setBold(true), (p, e) -> e.isBold()));
+        }
+        if (settings.strikethroughEnabled)
+        {
+            elements.add(new ParserFormat(elements.size(), '~', (p, e) -> e.setStrikethrough(true), (p, e) -> e.isStrikethrough()));
+        }
+        if (settings.obfuscateEnabled)
+        {
+            elements.add(new ParserFormat(elements.size(), '%', (p, e) -> e.setObfuscated(true), (p, e) -> e.isObfuscated()));
+        }
+        if (settings.alternateColorCharEnabled)
+        {
+            elements.add(new ParserColor(elements.size(), settings.alternateColorChar));
+        }
+        if (! settings.colorCharEnabled)
+        {
+            elements.add(new ParserSkipColor(elements.size()));
+        }
+        elements.add(new ParserDescriptionElement(elements.size()));
+        this.elementsCount = elements.size();
+
+        char maxKey = 0;
+        List<ParserApplicableElement> applicableElements = new ArrayList<>(this.elementsCount);
+        for (ParserAbstractElement element : elements)
+        {
+            for (char key : element.keys)
+            {
+                maxKey = (char) Math.max(maxKey, key);
+            }
+            if (element instanceof ParserApplicableElement)
+            {
+                applicableElements.add((ParserApplicableElement) element);
+            }
+        }
+        this.applicableElements = applicableElements.toArray(new ParserApplicableElement[applicableElements.size()]);
+
+        // elements are kept in order of registration, so multiple elements registered for this same key are invoked in this same order.
+        this.handlers = new ParserAbstractElement[maxKey + 1][];
+        for (ParserAbstractElement element : elements)
+        {
+            for (char key : element.keys)
+            {
+                ParserAbstractElement[] keyHandlers = this.handlers[key];
+                if (keyHandlers == null)
+                {
+                    this.handlers[key] = new ParserAbstractElement[]{element};
+                    continue;
+                }
+                keyHandlers = Arrays.copyOf(keyHandlers, keyHandlers.length + 1);
+                keyHandlers[keyHandlers.length - 1] = element;
+                this.handlers[key] = keyHandlers;
+            }
+        }
+    }
+
+    /**
+     * Returns settings used by this parser.
+     *
+     * @return settings used by this parser.
+     */
+    public ParserSettings getSettings()
+    {
+        return this.settings;
+    }
+
+    /**
+     * Parse given markup text and returns json representation of parsed message.
+     *
+     * @param text
+     *         markup text to parse.
+     *
+     * @return json representation of parsed message.
+     */
+    public String parse(CharSequence text)
+    {
+        return new Parser(this, text.toString()).parse();
+    }
+
+    /**
+     * Parse markup text from given range of char array and returns json representation of parsed message.
+     *
+     * @param chars
+     *         array with markup text to parse.
+     * @param offset
+     *         index of first char of text.
+     * @param length
+     *         length of text.
+     *
+     * @return json representation of parsed message.
+     */
+    public String parse(char[] chars, int offset, int length)
+    {
+        return new Parser(this, new String(chars, offset, length)).parse();
+    }
+
+    /**
+     * Parse all given markup texts in parallel using {@link ForkJoinPool#commonPool()}, this method blocks until all texts are parsed.
+     *
+     * @param texts
+     *         markup texts to parse by their keys.
+     *
+     * @return parsed messages and errors of texts that could not be parsed.
+     *
+     * @see #parseAll(Map, Executor)
+     */
+    public BatchParseResult parseAll(Map<String, String> texts)
+    {
+        return this.parseAll(texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse all given markup texts in parallel using given executor, this method blocks until all texts are parsed. <br>
+     * Texts are split into few continuous ranges for each available processor, error of single text does not stop parsing of other texts.
+     * Note that {@link ParserOptimizerListener} might be invoked from threads of executor.
+     *
+     * @param texts
+     *         markup texts to parse by their keys.
+     * @param executor
+     *         executor used to parse texts.
+     *
+     * @return parsed messages and errors of texts that could not be parsed.
+     */
+    public BatchParseResult parseAll(Map<String, String> texts, Executor executor)
+    {
+        return BatchParseResult.parse(this, texts, executor);
+    }
+
+    /**
+     * Parse given markup text and returns root element of parsed message.
+     *
+     * @param text
+     *         markup text to parse.
+     *
+     * @return root element of parsed message.
+     */
+    ComponentElement parseElement(String text)
+    {
+        return new Parser(this, text).parseElement();
+    }
+
+    /**
+     * Returns elements that should handle given char, or empty array if this char isn't used by any element.
+     *
+     * @param c
+     *         char to check.
+     *
+     * @return elements that should handle given char.
+     */
+    ParserAbstractElement[] getHandlers(char c)
+    {
+        if (c >= this.handlers.length)
+        {
+            return NO_ELEMENTS;
+        }
+        ParserAbstractElement[] keyHandlers = this.handlers[c];
+        return (keyHandlers == null) ? NO_ELEMENTS : keyHandlers;
+    }
+
+    /**
+     * Returns compiled parser for given settings, {@link ParserSettings#ALL_ALLOWED} is used if settings are null.
+     *
+     * @param settings
+     *         settings of parser.
+     *
+     * @return compiled parser for given settings.
+     */
+    public static CompiledParser of(@Nullable ParserSettings settings)
+    {
+        return ((settings == null) ? ParserSettings.ALL_ALLOWED : settings).getCompiledParser();
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.diorite.KeyBind;
+import org.diorite.chat.ChatMessageEvent.Action;
+import org.diorite.chat.ChatMessageEvent.Action.ActionType;
+import org.diorite.commons.math.DioriteMathUtils;
+import org.diorite.nbt.NbtSerialization;
+
+/**
+ * Streaming reader of chat components in json format used by minecraft client, components are created directly from json tokens without
+ * creating json tree first. <br>
+ * Colors and actions are resolved using constant lookup maps, and immutable events with this same action and string value are shared within
+ * single message.
+ */
+final class ComponentJsonReader
+{
+    private static final Map<String, ChatColor> COLORS  = new HashMap<>(32);
+    private static final Map<String, Action>    ACTIONS = new HashMap<>(16);
+
+    static
+    {
+        for (ChatColor color : ChatColor.values())
+        {
+            COLORS.put(color.getName(), color);
+        }
+        for (Action action : Action.values())
+        {
+            ACTIONS.put(action.name().toLowerCase(), action);
+        }
+    }
+
+    private final JsonReader                                  reader;
+    private final Map<Action, Map<String, ChatMessageEvent>> events = new EnumMap<>(Action.class);
+
+    private ComponentJsonReader(Reader reader)
+    {
+        this.reader = new JsonReader(reader);
+        this.reader.setLenient(true); // client also reads messages in lenient mode.
+    }
+
+    /**
+     * Read chat message from given json string.
+     *
+     * @param json
+     *         json representation of message.
+     *
+     * @return read message.
+     *
+     * @throws IllegalArgumentException
+     *         if given string isn't valid message.
+     */
+    static ChatMessageImpl read(String json)
+    {
+        try
+        {
+            return read(new StringReader(json));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Invalid chat message json: " + json, e);
+        }
+    }
+
+    /**
+     * Read chat message from given reader, reader isn't closed.
+     *
+     * @param reader
+     *         source of json representation of message.
+     *
+     * @return read message.
+     *
+     * @throws IOException
+     *         if reader throws exception or json is malformed.
+     * @throws IllegalArgumentException
+     *         if json does not represent valid message.
+     */
+    static ChatMessageImpl read(Reader reader) throws IOException
+    {
+        try
+        {
+            return new ComponentJsonReader(reader).readComponent();
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            // gson reports unexpected tokens and nbt parser invalid mojangson using other runtime exceptions.
+            throw new IllegalArgumentException("Invalid chat message json", e);
+        }
+    }
+
+    private ChatMessageImpl readComponent() throws IOException
+    {
+        JsonReader reader = this.reader;
+        switch (reader.peek())
+        {
+            case BEGIN_OBJECT:
+                return this.readObject();
+            case BEGIN_ARRAY:
+                // first element of array is used as parent of all other elements.
+                reader.beginArray();
+                ChatMessageImpl first = this.readComponent();
+                while (reader.hasNext())
+                {
+                    first.addExtra(this.readComponent());
+                }
+                reader.endArray();
+                return first;
+            case STRING:
+            case NUMBER:
+            case BOOLEAN:
+                return new ChatMessageImpl().setText(this.readString());
+            default:
+                throw new IllegalArgumentException("Unexpected token: " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+
+    private ChatMessageImpl readObject() throws IOException
+    {
+        JsonReader reader = this.reader;
+        ChatMessageImpl element = new ChatMessageImpl();
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            String name = reader.nextName();
+            switch (name)
+            {
+                case "text":
+                    element.text = reader.nextString();
+                    break;
+                case "translate":
+                    element.translate = reader.nextString();
+                    break;
+                case "with":
+                    element.with = this.readWith();
+                    break;
+                case "score":
+                    element.score = this.readScore();
+                    break;
+                case "selector":
+                    element.selector = reader.nextString();
+                    break;
+                case "keybind":
+                    this.readKeyBind(element, reader.nextString());
+                    break;
+                case "extra":
+                    reader.beginArray();
+                    while (reader.hasNext())
+                    {
+                        element.addExtra(this.readComponent());
+                    }
+                    reader.endArray();
+                    break;
+                case "color":
+                    element.color = COLORS.get(reader.nextString());
+                    break;
+                case "bold":
+                    element.bold = this.readBoolean();
+                    break;
+                case "italic":
+                    element.italic = this.readBoolean();
+                    break;
+                case "underlined":
+                    element.underlined = this.readBoolean();
+                    break;
+                case "strikethrough":
+                    element.strikethrough = this.readBoolean();
+                    break;
+                case "obfuscated":
+                    element.obfuscated = this.readBoolean();
+                    break;
+                case "insertion":
+                    element.insertion = (ChatEventAppendChat) this.getEvent(Action.APPEND_CHAT, reader.nextString());
+                    break;
+                case "clickEvent":
+                    element.clickEvent = this.readEvent(ActionType.CLICK);
+                    break;
+                case "hoverEvent":
+                    element.hoverEvent = this.readEvent(ActionType.HOVER);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return element;
+    }
+
+    private List<Object> readWith() throws IOException
+    {
+        JsonReader reader = this.reader;
+        List<Object> with = new ArrayList<>(4);
+        reader.beginArray();
+        while (reader.hasNext())
+        {
+            JsonToken token = reader.peek();
+            if ((token == JsonToken.BEGIN_OBJECT) || (token == JsonToken.BEGIN_ARRAY))
+            {
+                with.add(this.readComponent());
+            }
+            else
+            {
+                with.add(this.readString());
+            }
+        }
+        reader.endArray();
+        return with;
+    }
+
+    private ChatScore readScore() throws IOException
+    {
+        JsonReader reader = this.reader;
+        String scoreName = "";
+        String objective = "";
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            switch (reader.nextName())
+            {
+                case "name":
+                    scoreName = reader.nextString();
+                    break;
+                case "objective":
+                    objective = reader.nextString();
+                    break;
+                case "value":
+                    value = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return ChatScore.of(scoreName, objective, value);
+    }
+
+    private void readKeyBind(ChatMessageImpl element, String name)
+    {
+        for (KeyBind keyBind : KeyBind.values())
+        {
+            if (keyBind.getName().equals(name))
+            {
+                element.keyBind = keyBind;
+                return;
+            }
+        }
+        // unknown key, at least show its name.
+        element.text = name;
+    }
+
+    // gson converts numbers to strings, but not booleans.
+    private String readString() throws IOException
+    {
+        JsonReader reader = this.reader;
+        if (reader.peek() == JsonToken.BOOLEAN)
+        {
+            return String.valueOf(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
+
+    private Boolean readBoolean() throws IOException
+    {
+        JsonReader reader = this.reader;
+        if (reader.peek() == JsonToken.BOOLEAN)
+        {
+            return reader.nextBoolean();
+        }
+        return Boolean.parseBoolean(reader.nextString());
+    }
+
+    // returns null if event is invalid or its action does not match type of field, like hover action used in click event.
+    @Nullable
+    private ChatMessageEvent readEvent(ActionType type) throws IOException
+    {
+        JsonReader reader = this.reader;
+        Action action = null;
+        String value = null;
+        ChatMessageImpl component = null;
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            switch (reader.nextName())
+            {
+                case "action":
+                    action = ACTIONS.get(reader.nextString());
+                    break;
+                case "value":
+                    JsonToken token = reader.peek();
+                    if ((token == JsonToken.BEGIN_OBJECT) || (token == JsonToken.BEGIN_ARRAY))
+                    {
+                        component = this.readComponent();
+                    }
+                    else
+                    {
+                        value = reader.nextString();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if ((action == null) || (action.getType() != type))
+        {
+            return null;
+        }
+        if (action == Action.SHOW_TEXT)
+        {
+            if (component == null)
+            {
+                if (value == null)
+                {
+                    return null;
+                }
+                component = new ChatMessageImpl().setText(value);
+            }
+            return ChatMessageEvent.showText(component);
+        }
+        if (value == null)
+        {
+            return null;
+        }
+        return this.getEvent(action, value);
+    }
+
+    @Nullable
+    private ChatMessageEvent getEvent(Action action, String value)
+    {
+        switch (action)
+        {
+            case SHOW_ITEM:
+                return ChatMessageEvent.showItem(NbtSerialization.fromMojangson(value, true));
+            case SHOW_ENTITY:
+                return ChatMessageEvent.showEntity(NbtSerialization.fromMojangson(value, true));
+            default:
+                break;
+        }
+        Map<String, ChatMessageEvent> events = this.events.get(action);
+        if (events == null)
+        {
+            events = new HashMap<>(4);
+            this.events.put(action, events);
+        }
+        ChatMessageEvent event = events.get(value);
+        if (event == null)
+        {
+            event = createEvent(action, value);
+            if (event == null)
+            {
+                return null;
+            }
+            events.put(value, event);
+        }
+        return event;
+    }
+
+    @Nullable
+    private static ChatMessageEvent createEvent(Action action, String value)
+    {
+        switch (action)
+        {
+            case SHOW_ACHIEVEMENT:
+                return ChatMessageEvent.showAchievement(value);
+            case CHANGE_PAGE:
+                Integer page = DioriteMathUtils.asInt(value);
+                return (page == null) ? null : ChatMessageEvent.changePage(page);
+            case OPEN_URL:
+                return ChatMessageEvent.openURL(value);
+            case OPEN_FILE:
+                return ChatMessageEvent.openFile(value);
+            case RUN_COMMAND:
+                return ChatMessageEvent.runCommand(value);
+            case SUGGEST_COMMAND:
+                return ChatMessageEvent.suggestCommand(value);
+            case APPEND_CHAT:
+                return ChatMessageEvent.appendChat(value);
+            default:
+                throw new IllegalArgumentException("Unexpected action: " + action);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.diorite.KeyBind;
+import org.diorite.chat.ChatMessageEvent.Action;
+
+/**
+ * Streaming writer of chat components in json format used by minecraft client. <br>
+ * Json is written directly to given {@link Appendable}, all names and action types are constant strings, so nothing is allocated beyond the
+ * output buffer. {@link #toJson(BaseComponentElement)} reuses thread local string builder.
+ */
+final class ComponentJsonWriter
+{
+    private static final int MAX_POOLED_CAPACITY = 16384;
+
+    private static final String[] ACTION_NAMES;
+    private static final char[]   HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // slot is cleared while builder is used, so nested serialization will just use new builder.
+    private static final ThreadLocal<StringBuilder[]> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder[]{new StringBuilder(256)});
+
+    static
+    {
+        Action[] actions = Action.values();
+        ACTION_NAMES = new String[actions.length];
+        for (Action action : actions)
+        {
+            ACTION_NAMES[action.ordinal()] = action.name().toLowerCase();
+        }
+    }
+
+    private ComponentJsonWriter() {}
+
+    /**
+     * Returns json representation of given component.
+     *
+     * @param element
+     *         component to serialize.
+     *
+     * @return json representation of given component.
+     */
+    static String toJson(BaseComponentElement<?, ?, ?> element)
+    {
+        StringBuilder builder = acquireBuilder();
+        try
+        {
+            write(element, builder);
+            return builder.toString();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e); // string builder does not throw any exceptions.
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    /**
+     * Returns json representation of given compact component tree.
+     *
+     * @param tree
+     *         component tree to serialize.
+     *
+     * @return json representation of given tree.
+     */
+    static String toJson(CompactComponentTree tree)
+    {
+        StringBuilder builder = acquireBuilder();
+        try
+        {
+            write(tree, 0, builder);
+            return builder.toString();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e); // string builder does not throw any exceptions.
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static StringBuilder acquireBuilder()
+    {
+        StringBuilder[] holder = BUFFER.get();
+        StringBuilder builder = holder[0];
+        if (builder == null)
+        {
+            return new StringBuilder(256);
+        }
+        holder[0] = null;
+        builder.setLength(0);
+        return builder;
+    }
+
+    private static void releaseBuilder(StringBuilder builder)
+    {
+        if (builder.capacity() <= MAX_POOLED_CAPACITY)
+        {
+            BUFFER.get()[0] = builder;
+        }
+    }
+
+    /**
+     * Writes json representation of given component to given appendable.
+     *
+     * @param element
+     *         component to serialize.
+     * @param out
+     *         output appendable.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void write(BaseComponentElement<?, ?, ?> element, Appendable out) throws IOException
+    {
+        out.append('{');
+        if (element.text != null)
+        {
+            writeString(out, "text", element.text);
+        }
+        else if (element.translate != null)
+        {
+            writeString(out, "translate", element.translate);
+            List<Object> with = element.with;
+            if ((with != null) && ! with.isEmpty())
+            {
+                out.append(",\"with\":[");
+                for (int i = 0, size = with.size(); i < size; i++)
+                {
+                    if (i != 0)
+                    {
+                        out.append(',');
+                    }
+                    Object object = with.get(i);
+                    if (object instanceof BaseComponentElement)
+                    {
+                        write((BaseComponentElement<?, ?, ?>) object, out);
+                    }
+                    else
+                    {
+                        writeQuoted(out, String.valueOf(object));
+                    }
+                }
+                out.append(']');
+            }
+        }
+        else if (element.score != null)
+        {
+            writeScore(out, element.score);
+        }
+        else if (element.selector != null)
+        {
+            writeString(out, "selector", element.selector);
+        }
+        else if (element.keyBind != null)
+        {
+            writeString(out, "keybind", element.keyBind.getName());
+        }
+        else
+        {
+            // client requires some content in each component.
+            out.append("\"text\":\"\"");
+        }
+
+        if (element.color != null)
+        {
+            out.append(',');
+            writeString(out, "color", element.color.getName());
+        }
+        writeBoolean(out, "bold", element.bold);
+        writeBoolean(out, "italic", element.italic);
+        writeBoolean(out, "underlined", element.underlined);
+        writeBoolean(out, "strikethrough", element.strikethrough);
+        writeBoolean(out, "obfuscated", element.obfuscated);
+
+        if (element.insertion != null)
+        {
+            out.append(',');
+            writeString(out, "insertion", String.valueOf(element.insertion.getRawValue()));
+        }
+        if (element.clickEvent != null)
+        {
+            out.append(",\"clickEvent\":");
+            writeEvent(out, element.clickEvent);
+        }
+        if (element.hoverEvent != null)
+        {
+            out.append(",\"hoverEvent\":");
+            writeEvent(out, element.hoverEvent);
+        }
+
+        List<? extends BaseComponentElement<?, ?, ?>> extra = element.extra;
+        if ((extra != null) && ! extra.isEmpty())
+        {
+            out.append(",\"extra\":[");
+            for (int i = 0, size = extra.size(); i < size; i++)
+            {
+                if (i != 0)
+                {
+                    out.append(',');
+                }
+                write(extra.get(i), out);
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes json representation of given node of compact component tree to given appendable, output is this same as for component tree
+     * used to create compact one.
+     *
+     * @param tree
+     *         component tree to serialize.
+     * @param node
+     *         index of node to serialize.
+     * @param out
+     *         output appendable.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void write(CompactComponentTree tree, int node, Appendable out) throws IOException
+    {
+        out.append('{');
+        int start = tree.textOffsets[node];
+        int end = tree.textOffsets[node + 1];
+        Object data = tree.getData(node);
+        switch (tree.contents[node])
+        {
+            case CompactComponentTree.CONTENT_TEXT:
+                out.append("\"text\":");
+                writeQuoted(out, tree.chars, start, end);
+                break;
+            case CompactComponentTree.CONTENT_TRANSLATE:
+                out.append("\"translate\":");
+                writeQuoted(out, tree.chars, start, end);
+                if ((data != null) && (((Object[]) data).length != 0))
+                {
+                    Object[] with = (Object[]) data;
+                    out.append(",\"with\":[");
+                    for (int i = 0; i < with.length; i++)
+                    {
+                        if (i != 0)
+                        {
+                            out.append(',');
+                        }
+                        if (with[i] instanceof CompactComponentTree)
+                        {
+                            write((CompactComponentTree) with[i], 0, out);
+                        }
+                        else
+                        {
+                            writeQuoted(out, (String) with[i]);
+                        }
+                    }
+                    out.append(']');
+                }
+                break;
+            case CompactComponentTree.CONTENT_SCORE:
+                writeScore(out, (ChatScore) data);
+                break;
+            case CompactComponentTree.CONTENT_SELECTOR:
+                out.append("\"selector\":");
+                writeQuoted(out, tree.chars, start, end);
+                break;
+            case CompactComponentTree.CONTENT_KEYBIND:
+                writeString(out, "keybind", ((KeyBind) data).getName());
+                break;
+            default:
+                // client requires some content in each component.
+                out.append("\"text\":\"\"");
+                break;
+        }
+
+        int format = tree.formats[node];
+        ChatColor color = BaseComponentElement.getFormatColor(format);
+        if (color != null)
+        {
+            out.append(',');
+            writeString(out, "color", color.getName());
+        }
+        writeBoolean(out, "bold", BaseComponentElement.getFlag(format, BaseComponentElement.FORMAT_BOLD));
+        writeBoolean(out, "italic", BaseComponentElement.getFlag(format, BaseComponentElement.FORMAT_ITALIC));
+        writeBoolean(out, "underlined", BaseComponentElement.getFlag(format, BaseComponentElement.FORMAT_UNDERLINED));
+        writeBoolean(out, "strikethrough", BaseComponentElement.getFlag(format, BaseComponentElement.FORMAT_STRIKETHROUGH));
+        writeBoolean(out, "obfuscated", BaseComponentElement.getFlag(format, BaseComponentElement.FORMAT_OBFUSCATED));
+
+        if (tree.events != null)
+        {
+            int index = node * CompactComponentTree.EVENTS;
+            ChatMessageEvent insertion = tree.events[index + CompactComponentTree.EVENT_INSERTION];
+            ChatMessageEvent clickEvent = tree.events[index + CompactComponentTree.EVENT_CLICK];
+            ChatMessageEvent hoverEvent = tree.events[index + CompactComponentTree.EVENT_HOVER];
+            if (insertion != null)
+            {
+                out.append(',');
+                writeString(out, "insertion", String.valueOf(insertion.getRawValue()));
+            }
+            if (clickEvent != null)
+            {
+                out.append(",\"clickEvent\":");
+                writeEvent(out, clickEvent);
+            }
+            if (hoverEvent != null)
+            {
+                out.append(",\"hoverEvent\":");
+                writeEvent(out, hoverEvent);
+            }
+        }
+
+        int next = tree.next(node);
+        if (next != (node + 1))
+        {
+            out.append(",\"extra\":[");
+            for (int child = node + 1; child < next; child = tree.next(child))
+            {
+                if (child != (node + 1))
+                {
+                    out.append(',');
+                }
+                write(tree, child, out);
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes json representation of given event to given appendable, value of event is always written as string or chat component.
+     *
+     * @param out
+     *         output appendable.
+     * @param event
+     *         event to serialize.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void writeEvent(Appendable out, ChatMessageEvent event) throws IOException
+    {
+        out.append('{');
+        writeString(out, "action", ACTION_NAMES[event.getAction().ordinal()]);
+        out.append(",\"value\":");
+        Object value = event.getRawValue();
+        if (value instanceof BaseComponentElement)
+        {
+            write((BaseComponentElement<?, ?, ?>) value, out);
+        }
+        else if (value instanceof ChatMessage)
+        {
+            out.append(((ChatMessage) value).toJson());
+        }
+        else
+        {
+            writeQuoted(out, String.valueOf(value));
+        }
+        out.append('}');
+    }
+
+    private static void writeScore(Appendable out, ChatScore score) throws IOException
+    {
+        out.append("\"score\":{");
+        writeString(out, "name", score.getName());
+        out.append(',');
+        writeString(out, "objective", score.getObjective());
+        String value = score.getValue();
+        if (value != null)
+        {
+            out.append(',');
+            writeString(out, "value", value);
+        }
+        out.append('}');
+    }
+
+    private static void writeBoolean(Appendable out, String name, @Nullable Boolean value) throws IOException
+    {
+        if (value == null)
+        {
+            return;
+        }
+        out.append(",\"").append(name).append(value ? "\":true" : "\":false");
+    }
+
+    private static void writeString(Appendable out, String name, String value) throws IOException
+    {
+        out.append('"').append(name).append("\":");
+        writeQuoted(out, value);
+    }
+
+    /**
+     * Writes given string as quoted and escaped json string, line and paragraph separators are escaped too, so json is also valid javascript.
+     * Ranges without escaped characters are written at once.
+     *
+     * @param out
+     *         output appendable.
+     * @param value
+     *         string to write.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void writeQuoted(Appendable out, CharSequence value) throws IOException
+    {
+        out.append('"');
+        int last = 0;
+        for (int i = 0, length = value.length(); i < length; i++)
+        {
+            char c = value.charAt(i);
+            if ((c >= ' ') && (c != '"') && (c != '\\') && (c != '\u2028') && (c != '\u2029'))
+            {
+                continue;
+            }
+            if (last != i)
+            {
+                out.append(value, last, i);
+            }
+            last = i + 1;
+            writeEscaped(out, c);
+        }
+        if (last != value.length())
+        {
+            out.append(value, last, value.length());
+        }
+        out.append('"');
+    }
+
+    /**
+     * Writes given range of char array as quoted and escaped json string, see {@link #writeQuoted(Appendable, CharSequence)}.
+     *
+     * @param out
+     *         output appendable.
+     * @param chars
+     *         source chars.
+     * @param start
+     *         index of first char to write.
+     * @param end
+     *         index after last char to write.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void writeQuoted(Appendable out, char[] chars, int start, int end) throws IOException
+    {
+        out.append('"');
+        int last = start;
+        for (int i = start; i < end; i++)
+        {
+            char c = chars[i];
+            if ((c >= ' ') && (c != '"') && (c != '\\') && (c != '\u2028') && (c != '\u2029'))
+            {
+                continue;
+            }
+            if (last != i)
+            {
+                append(out, chars, last, i);
+            }
+            last = i + 1;
+            writeEscaped(out, c);
+        }
+        if (last != end)
+        {
+            append(out, chars, last, end);
+        }
+        out.append('"');
+    }
+
+    // appendable does not accept char arrays, so common outputs are handled directly to avoid wrapping array.
+    private static void append(Appendable out, char[] chars, int start, int end) throws IOException
+    {
+        if (out instanceof StringBuilder)
+        {
+            ((StringBuilder) out).append(chars, start, end - start);
+        }
+        else if (out instanceof Writer)
+        {
+            ((Writer) out).write(chars, start, end - start);
+        }
+        else
+        {
+            for (int i = start; i < end; i++)
+            {
+                out.append(chars[i]);
+            }
+        }
+    }
+
+    private static void writeEscaped(Appendable out, char c) throws IOException
+    {
+        switch (c)
+        {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            case '\b':
+                out.append("\\b");
+                break;
+            case '\f':
+                out.append("\\f");
+                break;
+            default:
+                out.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF])
+                   .append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+                break;
+        }
+    }
+}
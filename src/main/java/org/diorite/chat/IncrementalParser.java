@@ -0,0 +1,558 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Parser of chat markup for text that is edited many times, like chat input or page of book in editor. <br>
+ * Parser keeps tree of last parsed text together with checkpoints of parser state recorded after markup elements, so after each edit only text
+ * starting at last checkpoint before edited part is tokenized again, and tokenizing stops on first checkpoint after edited part with state equal
+ * to the previous parse, all nodes created from rest of text are moved from previous tree. <br>
+ * Edit that changes state of parser for rest of text (like opening new format) still requires parsing text to the end. <br>
+ * This class is not thread-safe.
+ */
+public final class IncrementalParser
+{
+    private final CompiledParser compiledParser;
+
+    private final ComponentElement       rootElement;
+    private       String                 text;
+    private       List<ParserCheckpoint> checkpoints;
+    @Nullable
+    private       String                 json;
+
+    /**
+     * Parse given markup text.
+     *
+     * @param text
+     *         markup text to parse.
+     * @param settings
+     *         settings of parser, {@link ParserSettings#ALL_ALLOWED} is used if null.
+     */
+    public IncrementalParser(String text, @Nullable ParserSettings settings)
+    {
+        this(CompiledParser.of(settings), text);
+    }
+
+    IncrementalParser(CompiledParser compiledParser, String text)
+    {
+        this.compiledParser = compiledParser;
+        this.text = text;
+        this.checkpoints = new ArrayList<>(16);
+        Parser parser = new Parser(compiledParser, text);
+        this.checkpoints.add(new ParserCheckpoint(parser));
+        parser.parseText(this.checkpoints, null);
+        this.rootElement = parser.rootElement;
+    }
+
+    /**
+     * Returns current markup text.
+     *
+     * @return current markup text.
+     */
+    public String getText()
+    {
+        return this.text;
+    }
+
+    /**
+     * Returns json representation of current text, optimized if optimizer is enabled in settings.
+     *
+     * @return json representation of current text.
+     */
+    public String toJson()
+    {
+        String json = this.json;
+        if (json == null)
+        {
+            json = this.toElement().toString();
+            this.json = json;
+        }
+        return json;
+    }
+
+    /**
+     * Returns chat message of current text, optimized if optimizer is enabled in settings.
+     *
+     * @return chat message of current text.
+     */
+    public ChatMessage toChatMessage()
+    {
+        return CompactComponentTree.of(this.toElement()).toChatMessage();
+    }
+
+    private ComponentElement toElement()
+    {
+        // tree of parser must stay untouched, as it is reused by next edits.
+        ComponentElement element = this.rootElement.duplicate();
+        if (this.compiledParser.settings.useOptimizer)
+        {
+            element.optimize();
+        }
+        return element;
+    }
+
+    /**
+     * Replace part of text and parse it again.
+     *
+     * @param offset
+     *         index of first changed char.
+     * @param removedLength
+     *         amount of removed chars.
+     * @param inserted
+     *         text inserted at offset.
+     *
+     * @return range of text and nodes that were parsed again.
+     */
+    public Change edit(int offset, int removedLength, String inserted)
+    {
+        String text = this.text;
+        if ((offset < 0) || (removedLength < 0) || ((offset + removedLength) > text.length()))
+        {
+            throw new IndexOutOfBoundsException("Invalid edit at " + offset + " removing " + removedLength + " chars of " + text.length());
+        }
+        String newText = text.substring(0, offset) + inserted + text.substring(offset + removedLength);
+        int delta = inserted.length() - removedLength;
+        List<ParserCheckpoint> checkpoints = this.checkpoints;
+
+        // elements look one char ahead, so checkpoint is valid only if that char wasn't changed too.
+        int startIndex = checkpoints.size() - 1;
+        while ((startIndex > 0) && (checkpoints.get(startIndex).position >= offset))
+        {
+            startIndex--;
+        }
+        ParserCheckpoint start = checkpoints.get(startIndex);
+        Map<ComponentElement, OpenElement> open = detach(start);
+
+        Parser parser = new Parser(this.compiledParser, newText, this.rootElement, start);
+        List<ParserCheckpoint> parsed = new ArrayList<>(8);
+        Resynchronization resynchronization = new Resynchronization(checkpoints, startIndex + 1, offset + inserted.length() + 1, delta, open);
+        ParserCheckpoint end;
+        try
+        {
+            end = parser.parseText(parsed, resynchronization);
+        }
+        catch (RuntimeException | StackOverflowError e)
+        {
+            // tree must stay equal to current text, so next edits can still reuse it.
+            for (OpenElement element : open.values())
+            {
+                element.restore();
+            }
+            throw e;
+        }
+
+        int addedNodes = 0;
+        for (OpenElement element : open.values())
+        {
+            List<ComponentElement> extra = element.element.extra;
+            if (extra != null)
+            {
+                addedNodes += countNodes(extra.subList(element.size, extra.size()));
+            }
+        }
+        List<ParserCheckpoint> newCheckpoints = new ArrayList<>(checkpoints.size() + parsed.size());
+        newCheckpoints.addAll(checkpoints.subList(0, startIndex + 1));
+        newCheckpoints.addAll(parsed);
+        int removedNodes = 0;
+        int oldEnd;
+        if (end == null)
+        {
+            oldEnd = text.length();
+            for (OpenElement element : open.values())
+            {
+                removedNodes += countNodes(element.tail);
+            }
+        }
+        else
+        {
+            ParserCheckpoint previous = checkpoints.get(resynchronization.index);
+            oldEnd = previous.position;
+            removedNodes = attach(previous, resynchronization.replaced, open);
+            for (int i = resynchronization.index + 1, size = checkpoints.size(); i < size; i++)
+            {
+                newCheckpoints.add(checkpoints.get(i).move(delta, previous, end, resynchronization.replaced));
+            }
+        }
+        this.text = newText;
+        this.checkpoints = newCheckpoints;
+        this.json = null;
+        return new Change(start.position, oldEnd, (end == null) ? newText.length() : end.position, removedNodes, addedNodes);
+    }
+
+    /**
+     * Removes all nodes created after given checkpoint from elements that were open at that time, together with events of descriptions that
+     * weren't closed yet.
+     */
+    private static Map<ComponentElement, OpenElement> detach(ParserCheckpoint checkpoint)
+    {
+        Map<ComponentElement, OpenElement> open = new IdentityHashMap<>(checkpoint.levels.length + checkpoint.descriptions.length);
+        for (int i = 0; i < checkpoint.levels.length; i++)
+        {
+            open.put(checkpoint.levels[i], new OpenElement(checkpoint.levels[i], checkpoint.levelSizes[i]));
+        }
+        for (int i = 0; i < checkpoint.descriptions.length; i++)
+        {
+            ComponentElement description = checkpoint.descriptions[i];
+            OpenElement element = open.get(description);
+            if (element == null)
+            {
+                element = new OpenElement(description, checkpoint.descriptionSizes[i]);
+                open.put(description, element);
+            }
+            element.detachEvents();
+        }
+        return open;
+    }
+
+    /**
+     * Moves nodes created after resynchronization checkpoint of previous parse to elements open in checkpoint of new parse.
+     *
+     * @return amount of nodes removed from previous tree.
+     */
+    private static int attach(ParserCheckpoint previous, Map<ComponentElement, ComponentElement> replaced, Map<ComponentElement, OpenElement> open)
+    {
+        for (Map.Entry<ComponentElement, ComponentElement> entry : replaced.entrySet())
+        {
+            ComponentElement oldElement = entry.getKey();
+            ComponentElement newElement = entry.getValue();
+            int size = previous.getSize(oldElement);
+            OpenElement openElement = open.get(oldElement);
+            List<ComponentElement> moved;
+            if (openElement != null)
+            {
+                // element was open before edited part of text, so it is still this same element.
+                moved = openElement.tail.subList(size - openElement.size, openElement.tail.size());
+            }
+            else if (oldElement.extra != null)
+            {
+                moved = oldElement.extra.subList(size, oldElement.extra.size());
+            }
+            else
+            {
+                moved = Collections.emptyList();
+            }
+            // events of description that is still open were added by closing it in rest of text.
+            if (contains(previous.descriptions, oldElement))
+            {
+                ChatEventAppendChat insertion = (openElement == null) ? oldElement.insertion : openElement.insertion;
+                ChatMessageEvent hoverEvent = (openElement == null) ? oldElement.hoverEvent : openElement.hoverEvent;
+                ChatMessageEvent clickEvent = (openElement == null) ? oldElement.clickEvent : openElement.clickEvent;
+                newElement.insertion = insertion;
+                newElement.hoverEvent = hoverEvent;
+                newElement.clickEvent = clickEvent;
+            }
+            for (ComponentElement element : moved)
+            {
+                newElement.addExtra(element);
+            }
+            moved.clear();
+        }
+        int removedNodes = 0;
+        for (OpenElement element : open.values())
+        {
+            removedNodes += countNodes(element.tail);
+        }
+        return removedNodes;
+    }
+
+    private static boolean contains(ComponentElement[] elements, ComponentElement element)
+    {
+        for (ComponentElement e : elements)
+        {
+            if (e == element)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countNodes(List<ComponentElement> elements)
+    {
+        int nodes = 0;
+        for (ComponentElement element : elements)
+        {
+            nodes += element.countNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * Range of text and amount of nodes that were parsed again after edit.
+     */
+    public static final class Change
+    {
+        private final int start;
+        private final int oldEnd;
+        private final int newEnd;
+        private final int removedNodes;
+        private final int addedNodes;
+
+        Change(int start, int oldEnd, int newEnd, int removedNodes, int addedNodes)
+        {
+            this.start = start;
+            this.oldEnd = oldEnd;
+            this.newEnd = newEnd;
+            this.removedNodes = removedNodes;
+            this.addedNodes = addedNodes;
+        }
+
+        /**
+         * Returns index of first char that was parsed again.
+         *
+         * @return index of first char that was parsed again.
+         */
+        public int getStart()
+        {
+            return this.start;
+        }
+
+        /**
+         * Returns end index (exclusive) of replaced range in text before edit.
+         *
+         * @return end index of replaced range in text before edit.
+         */
+        public int getOldEnd()
+        {
+            return this.oldEnd;
+        }
+
+        /**
+         * Returns end index (exclusive) of parsed range in text after edit.
+         *
+         * @return end index of parsed range in text after edit.
+         */
+        public int getNewEnd()
+        {
+            return this.newEnd;
+        }
+
+        /**
+         * Returns amount of nodes removed from tree, nodes moved from previous tree are not counted.
+         *
+         * @return amount of nodes removed from tree.
+         */
+        public int getRemovedNodes()
+        {
+            return this.removedNodes;
+        }
+
+        /**
+         * Returns amount of nodes created for parsed range of text.
+         *
+         * @return amount of nodes created for parsed range of text.
+         */
+        public int getAddedNodes()
+        {
+            return this.addedNodes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Change{start=" + this.start + ", oldEnd=" + this.oldEnd + ", newEnd=" + this.newEnd + ", removedNodes=" + this.removedNodes +
+                   ", addedNodes=" + this.addedNodes + "}";
+        }
+    }
+
+    /**
+     * Element that was open at checkpoint where parsing was restarted, with children and events removed from it.
+     */
+    private static final class OpenElement
+    {
+        private final ComponentElement       element;
+        private final int                    size;
+        private final List<ComponentElement> tail;
+
+        private final boolean                hadExtra;
+
+        @Nullable private ChatEventAppendChat insertion;
+        @Nullable private ChatMessageEvent    hoverEvent;
+        @Nullable private ChatMessageEvent    clickEvent;
+        private           boolean             eventsDetached;
+
+        private OpenElement(ComponentElement element, int size)
+        {
+            this.element = element;
+            this.size = size;
+            List<ComponentElement> extra = element.extra;
+            this.hadExtra = extra != null;
+            if ((extra == null) || (extra.size() == size))
+            {
+                this.tail = new ArrayList<>(0);
+                return;
+            }
+            List<ComponentElement> created = extra.subList(size, extra.size());
+            this.tail = new ArrayList<>(created);
+            created.clear();
+        }
+
+        // events are added to description when it is closed, so they can be only changed by parsing rest of text.
+        private void detachEvents()
+        {
+            this.insertion = this.element.insertion;
+            this.hoverEvent = this.element.hoverEvent;
+            this.clickEvent = this.element.clickEvent;
+            this.element.insertion = null;
+            this.element.hoverEvent = null;
+            this.element.clickEvent = null;
+            this.eventsDetached = true;
+        }
+
+        // reverts element to state from before detaching, removing all nodes added to it since then.
+        private void restore()
+        {
+            List<ComponentElement> extra = this.element.extra;
+            if (extra != null)
+            {
+                extra.subList(Math.min(this.size, extra.size()), extra.size()).clear();
+                extra.addAll(this.tail);
+                if (! this.hadExtra && extra.isEmpty())
+                {
+                    this.element.extra = null;
+                }
+            }
+            else if (! this.tail.isEmpty())
+            {
+                this.element.extra = new ArrayList<>(this.tail);
+            }
+            if (this.eventsDetached)
+            {
+                this.element.insertion = this.insertion;
+                this.element.hoverEvent = this.hoverEvent;
+                this.element.clickEvent = this.clickEvent;
+            }
+        }
+    }
+
+    /**
+     * Finds checkpoint of new parse that has this same state as checkpoint of previous parse after edited part of text, so rest of text does not
+     * need to be parsed again.
+     */
+    private static final class Resynchronization implements Predicate<ParserCheckpoint>
+    {
+        private final List<ParserCheckpoint>             checkpoints;
+        private final int                                minPosition;
+        private final int                                delta;
+        private final Map<ComponentElement, OpenElement> open;
+
+        // previous open element -> new open element, identity for elements open before edited part of text.
+        private final Map<ComponentElement, ComponentElement> replaced = new IdentityHashMap<>(16);
+
+        private int index;
+
+        private Resynchronization(List<ParserCheckpoint> checkpoints, int index, int minPosition, int delta, Map<ComponentElement, OpenElement> open)
+        {
+            this.checkpoints = checkpoints;
+            this.index = index;
+            this.minPosition = minPosition;
+            this.delta = delta;
+            this.open = open;
+        }
+
+        @Override
+        public boolean test(ParserCheckpoint checkpoint)
+        {
+            // previous char is also checked by elements, so it must be outside of edited part of text too.
+            if (checkpoint.position < this.minPosition)
+            {
+                return false;
+            }
+            int position = checkpoint.position - this.delta;
+            List<ParserCheckpoint> checkpoints = this.checkpoints;
+            while ((this.index < checkpoints.size()) && (checkpoints.get(this.index).position < position))
+            {
+                this.index++;
+            }
+            if ((this.index == checkpoints.size()) || (checkpoints.get(this.index).position != position))
+            {
+                return false;
+            }
+            return this.matches(checkpoints.get(this.index), checkpoint);
+        }
+
+        private boolean matches(ParserCheckpoint previous, ParserCheckpoint current)
+        {
+            if ((previous.color != current.color) || (previous.levels.length != current.levels.length) ||
+                (previous.colors.length != current.colors.length) || (previous.descriptions.length != current.descriptions.length))
+            {
+                return false;
+            }
+            for (int i = 0; i < previous.indexes.length; i++)
+            {
+                if ((previous.active[i] != current.active[i]) || ((previous.indexes[i] == Parser.NONE) != (current.indexes[i] == Parser.NONE)))
+                {
+                    return false;
+                }
+            }
+            this.replaced.clear();
+            return this.matches(previous.levels, current.levels) && this.matches(previous.colors, current.colors) &&
+                   this.matches(previous.descriptions, current.descriptions);
+        }
+
+        private boolean matches(ComponentElement[] previous, ComponentElement[] current)
+        {
+            for (int i = 0; i < previous.length; i++)
+            {
+                if (! this.matches(previous[i], current[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matches(ComponentElement previous, ComponentElement current)
+        {
+            ComponentElement replacement = this.replaced.get(previous);
+            if (replacement != null)
+            {
+                return replacement == current;
+            }
+            if (this.open.containsKey(previous))
+            {
+                if (previous != current)
+                {
+                    return false;
+                }
+            }
+            // both elements were created for edited part of text, so they can be swapped if they have this same format.
+            else if (this.open.containsKey(current) || this.replaced.containsValue(current) || (previous.getFormat() != current.getFormat()))
+            {
+                return false;
+            }
+            this.replaced.put(previous, current);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass reader of legacy text with color codes. <br>
+ * Text between codes is collected into runs, codes that don't change style don't split runs, so each node of created message has different
+ * style than previous one. Nodes are flat children of single root, each node has own color and enabled formats. <br>
+ * Like in minecraft client: color code disables all formats, {@link ChatColor#RESET} disables color and formats, unknown codes are skipped.
+ */
+final class LegacyTextReader
+{
+    private final String  text;
+    private final boolean links;
+
+    private final List<ChatMessageImpl> nodes = new ArrayList<>(4);
+    private final StringBuilder         run   = new StringBuilder(32);
+    private       int                   runStyle;
+
+    private LegacyTextReader(String text, boolean links)
+    {
+        this.text = text;
+        this.links = links;
+    }
+
+    /**
+     * Read chat message from legacy text with color codes.
+     *
+     * @param text
+     *         legacy text to read.
+     * @param links
+     *         if urls in text should be changed to clickable links.
+     *
+     * @return created chat message.
+     */
+    static ChatMessageImpl read(String text, boolean links)
+    {
+        return new LegacyTextReader(text, links).read();
+    }
+
+    private ChatMessageImpl read()
+    {
+        String text = this.text;
+        int length = text.length();
+        int style = 0;
+        int segment = 0;
+        for (int i = 0; i < length; i++)
+        {
+            if (text.charAt(i) != ChatColor.COLOR_CHAR)
+            {
+                continue;
+            }
+            this.append(segment, i, style);
+            if (++ i < length)
+            {
+                style = applyCode(style, text.charAt(i));
+            }
+            segment = i + 1;
+        }
+        this.append(segment, length, style);
+        this.flush();
+        return this.createRoot();
+    }
+
+    private void append(int start, int end, int style)
+    {
+        if (start >= end)
+        {
+            return;
+        }
+        if (style != this.runStyle)
+        {
+            this.flush();
+            this.runStyle = style;
+        }
+        this.run.append(this.text, start, end);
+    }
+
+    private static int applyCode(int style, char code)
+    {
+        ChatColor color = ChatColor.getByChar(Character.toLowerCase(code));
+        if (color == null)
+        {
+            return style;
+        }
+        switch (color)
+        {
+            case RESET:
+                return 0;
+            case BOLD:
+                return style | BaseComponentElement.STYLE_BOLD;
+            case ITALIC:
+                return style | BaseComponentElement.STYLE_ITALIC;
+            case UNDERLINE:
+                return style | BaseComponentElement.STYLE_UNDERLINED;
+            case STRIKETHROUGH:
+                return style | BaseComponentElement.STYLE_STRIKETHROUGH;
+            case OBFUSCATE:
+                return style | BaseComponentElement.STYLE_OBFUSCATED;
+            default:
+                return (color.ordinal() + 1) << BaseComponentElement.STYLE_COLOR_SHIFT;
+        }
+    }
+
+    private void flush()
+    {
+        if (this.run.length() == 0)
+        {
+            return;
+        }
+        String text = this.run.toString();
+        this.run.setLength(0);
+        if (! this.links)
+        {
+            this.nodes.add(this.createNode(text));
+            return;
+        }
+        int lastMatchEnd = 0;
+        UrlScanner scanner = new UrlScanner(text);
+        while (scanner.find())
+        {
+            int start = scanner.start();
+            if (start != lastMatchEnd)
+            {
+                this.nodes.add(this.createNode(text.substring(lastMatchEnd, start)));
+            }
+            String url = text.substring(start, scanner.end());
+            ChatMessageImpl link = this.createNode(UrlScanner.getDisplayText(url));
+            link.clickEvent = ChatMessageEvent.openURL(url);
+            this.nodes.add(link);
+            lastMatchEnd = scanner.end();
+        }
+        if (lastMatchEnd == 0)
+        {
+            this.nodes.add(this.createNode(text));
+        }
+        else if (lastMatchEnd < text.length())
+        {
+            this.nodes.add(this.createNode(text.substring(lastMatchEnd)));
+        }
+    }
+
+    private ChatMessageImpl createNode(String text)
+    {
+        int style = this.runStyle;
+        ChatMessageImpl node = new ChatMessageImpl();
+        node.text = text;
+        node.color = BaseComponentElement.getColor(style);
+        node.bold = ((style & BaseComponentElement.STYLE_BOLD) != 0) ? Boolean.TRUE : null;
+        node.italic = ((style & BaseComponentElement.STYLE_ITALIC) != 0) ? Boolean.TRUE : null;
+        node.underlined = ((style & BaseComponentElement.STYLE_UNDERLINED) != 0) ? Boolean.TRUE : null;
+        node.strikethrough = ((style & BaseComponentElement.STYLE_STRIKETHROUGH) != 0) ? Boolean.TRUE : null;
+        node.obfuscated = ((style & BaseComponentElement.STYLE_OBFUSCATED) != 0) ? Boolean.TRUE : null;
+        return node;
+    }
+
+    private ChatMessageImpl createRoot()
+    {
+        List<ChatMessageImpl> nodes = this.nodes;
+        if (nodes.size() == 1)
+        {
+            return nodes.get(0);
+        }
+        ChatMessageImpl root = new ChatMessageImpl();
+        root.text = "";
+        if (nodes.isEmpty())
+        {
+            return root;
+        }
+        int first = 0;
+        if (! nodes.get(0).hasFormatting())
+        {
+            // first node without style can be used as content of root.
+            root.text = nodes.get(0).text;
+            first = 1;
+        }
+        List<ChatMessageImpl> extra = new ArrayList<>(nodes.size() - first);
+        for (int i = first, size = nodes.size(); i < size; i++)
+        {
+            ChatMessageImpl node = nodes.get(i);
+            node.parent = root;
+            extra.add(node);
+        }
+        root.extra = extra;
+        return root;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streaming writer of chat components in legacy format with color codes. <br>
+ * Writer tracks style of already written text and only emits codes when style changes: color code is written when color changes or when some
+ * format must be disabled (color code disables all formats), {@link ChatColor#RESET} is used instead if there is no color, and formats are
+ * written only if they aren't already active.
+ */
+final class LegacyTextWriter
+{
+    private static final int STYLE_FORMATS = BaseComponentElement.STYLE_BOLD | BaseComponentElement.STYLE_ITALIC |
+                                             BaseComponentElement.STYLE_UNDERLINED | BaseComponentElement.STYLE_STRIKETHROUGH |
+                                             BaseComponentElement.STYLE_OBFUSCATED;
+
+    private LegacyTextWriter() {}
+
+    /**
+     * Writes legacy representation of given component to given appendable, style inherited from parents of component is included.
+     *
+     * @param element
+     *         component to write.
+     * @param out
+     *         output appendable.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static void write(BaseComponentElement<?, ?, ?> element, Appendable out) throws IOException
+    {
+        write(element, (element.parent == null) ? 0 : element.parent.getResolvedStyle(), 0, out);
+    }
+
+    // returns style of text written so far.
+    private static int write(BaseComponentElement<?, ?, ?> element, int inherited, int current, Appendable out) throws IOException
+    {
+        int style = element.applyStyle(inherited);
+        String text = getText(element);
+        if ((text != null) && ! text.isEmpty())
+        {
+            current = writeStyle(current, style, out);
+            out.append(text);
+        }
+        List<? extends BaseComponentElement<?, ?, ?>> extra = element.extra;
+        if (extra != null)
+        {
+            for (int i = 0, size = extra.size(); i < size; i++)
+            {
+                current = write(extra.get(i), style, current, out);
+            }
+        }
+        return current;
+    }
+
+    @Nullable
+    private static String getText(BaseComponentElement<?, ?, ?> element)
+    {
+        if (element.text != null)
+        {
+            return element.text;
+        }
+        if (element.selector != null)
+        {
+            return element.selector;
+        }
+        return element.translate;
+    }
+
+    /**
+     * Writes codes needed to change style of text from current style to target one.
+     *
+     * @param current
+     *         style of already written text.
+     * @param target
+     *         style of next text.
+     * @param out
+     *         output appendable.
+     *
+     * @return target style.
+     *
+     * @throws IOException
+     *         if appendable throws exception.
+     */
+    static int writeStyle(int current, int target, Appendable out) throws IOException
+    {
+        if (current == target)
+        {
+            return target;
+        }
+        int color = target & BaseComponentElement.STYLE_COLOR_MASK;
+        if (((current & ~ target & STYLE_FORMATS) != 0) || ((current & BaseComponentElement.STYLE_COLOR_MASK) != color))
+        {
+            ChatColor chatColor = BaseComponentElement.getColor(target);
+            writeCode(out, (chatColor == null) ? ChatColor.RESET : chatColor);
+            current = color;
+        }
+        int added = target & ~ current;
+        if ((added & BaseComponentElement.STYLE_BOLD) != 0)
+        {
+            writeCode(out, ChatColor.BOLD);
+        }
+        if ((added & BaseComponentElement.STYLE_ITALIC) != 0)
+        {
+            writeCode(out, ChatColor.ITALIC);
+        }
+        if ((added & BaseComponentElement.STYLE_UNDERLINED) != 0)
+        {
+            writeCode(out, ChatColor.UNDERLINE);
+        }
+        if ((added & BaseComponentElement.STYLE_STRIKETHROUGH) != 0)
+        {
+            writeCode(out, ChatColor.STRIKETHROUGH);
+        }
+        if ((added & BaseComponentElement.STYLE_OBFUSCATED) != 0)
+        {
+            writeCode(out, ChatColor.OBFUSCATE);
+        }
+        return target;
+    }
+
+    private static void writeCode(Appendable out, ChatColor code) throws IOException
+    {
+        out.append(ChatColor.COLOR_CHAR).append(code.getChar());
+    }
+}
@@ -48,6 +48,45 @@ public interface MessageOutput
      */
     void addFilter(UnaryOperator<ChatMessage> filter);
 
+    /**
+     * Applies given filters to message, helper for implementations of {@link #addFilter(UnaryOperator)}. <br>
+     * Filters are invoked in order until one of them cancels message, total time of filters is recorded in given metrics as
+     * {@link ChatMetrics.Stage#FILTER} stage.
+     *
+     * @param filters
+     *         filters to apply.
+     * @param type
+     *         type of message.
+     * @param message
+     *         message to filter.
+     * @param metrics
+     *         metrics to record time of filters, may be null.
+     *
+     * @return filtered message, or null if message was canceled.
+     */
+    @Nullable
+    static ChatMessage applyFilters(Iterable<? extends UnaryOperator<ChatMessage>> filters, ChatMessageType type, ChatMessage message,
+                                    @Nullable ChatMetrics metrics)
+    {
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        int invoked = 0;
+        ChatMessage filtered = message;
+        for (UnaryOperator<ChatMessage> filter : filters)
+        {
+            invoked++;
+            filtered = filter.apply(filtered);
+            if (filtered == null)
+            {
+                break;
+            }
+        }
+        if (metrics != null)
+        {
+            metrics.record(ChatMetrics.Stage.FILTER, type, System.nanoTime() - start, invoked);
+        }
+        return filtered;
+    }
+
     /**
      * Removes given filter.
      *
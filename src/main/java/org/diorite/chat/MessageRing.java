@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded ring buffer of messages with many producers and single consumer. <br>
+ * Each slot has own sequence number, producer claims position by moving tail and publishes slot by setting its sequence, so producers only
+ * contend on tail and never block consumer.
+ */
+final class MessageRing
+{
+    private final    int               mask;
+    private final    AtomicLongArray   sequences;
+    private final    ChatMessageType[] types;
+    private final    ChatMessage[]     messages;
+    private final    AtomicLong        tail = new AtomicLong();
+    // only modified by consumer, volatile so producers can estimate size.
+    private volatile long              head;
+
+    MessageRing(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            this.sequences.set(i, i);
+        }
+        this.types = new ChatMessageType[size];
+        this.messages = new ChatMessage[size];
+    }
+
+    int capacity()
+    {
+        return this.mask + 1;
+    }
+
+    int size()
+    {
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+
+    boolean isEmpty()
+    {
+        return this.tail.get() == this.head;
+    }
+
+    /**
+     * Adds message to buffer, can be invoked by any thread.
+     *
+     * @return false if buffer is full.
+     */
+    boolean offer(ChatMessageType type, ChatMessage message)
+    {
+        while (true)
+        {
+            long position = this.tail.get();
+            int index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0)
+            {
+                if (this.tail.compareAndSet(position, position + 1))
+                {
+                    this.types[index] = type;
+                    this.messages[index] = message;
+                    this.sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns type of next message, or null if there is no published message, can be only invoked by consumer thread.
+     *
+     * @return type of next message.
+     */
+    @Nullable
+    ChatMessageType peekType()
+    {
+        long position = this.head;
+        int index = (int) position & this.mask;
+        if (this.sequences.get(index) != (position + 1))
+        {
+            return null;
+        }
+        return this.types[index];
+    }
+
+    /**
+     * Removes and returns next message, must be invoked only after {@link #peekType()} returned type of that message, by consumer thread.
+     *
+     * @return next message.
+     */
+    ChatMessage poll()
+    {
+        long position = this.head;
+        int index = (int) position & this.mask;
+        ChatMessage message = this.messages[index];
+        this.types[index] = null;
+        this.messages[index] = null;
+        this.sequences.lazySet(index, position + this.mask + 1);
+        this.head = position + 1;
+        return message;
+    }
+}
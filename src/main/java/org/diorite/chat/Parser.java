@@ -27,27 +27,17 @@ package org.diorite.chat;
 import javax.annotation.Nullable;
 
 import java.text.CharacterIterator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.google.common.collect.ImmutableList;
+import java.util.function.Predicate;
 
 import org.diorite.commons.ParserContext;
 
 public class Parser
 {
-    static final Pattern URL_PATTERN = Pattern.compile(
-            "(?:(?:https?)://)?(?:\\S+(?::\\S*)?@)?(?:(?!10(?:\\.\\d{1,3}){3})(?!127(?:\\.\\d{1,3}){3})(?!169\\.254(?:\\.\\d{1,3}){2})(?!192\\.168(?:\\" +
-            ".\\d{1,3}){2})(?!172\\.(?:1[6-9]|2\\d|3[0-1])(?:\\.\\d{1,3}){2})(?:[1-9]\\d?|1\\d\\d|2[01]\\d|22[0-3])(?:\\.(?:1?\\d{1,2}|2[0-4]\\d|25[0-5])){2}" +
-            "(?:\\.(?:[1-9]\\d?|1\\d\\d|2[0-4]\\d|25[0-4]))|(?:(?:[a-z\\x{00a1}-\\x{ffff}0-9]+-?)*[a-z\\x{00a1}-\\x{ffff}0-9]+)(?:\\." +
-            "(?:[a-z\\x{00a1}-\\x{ffff}0-9]+-?)*[a-z\\x{00a1}-\\x{ffff}0-9]+)*(?:\\.(?:[a-z\\x{00a1}-\\x{ffff}]{2,})))(?::\\d{2,5})?(?:/[^\\s]*)?",
-            Pattern.UNICODE_CASE & Pattern.CASE_INSENSITIVE);
-
     static final int NONE = - 1;
 
     static final char ESCAPE = '\\';
@@ -55,80 +45,133 @@ public class Parser
     static final char NULL   = '\0';
     static final char END    = CharacterIterator.DONE;
 
-    final ParserSettings settings;
-    final ParserContext  context;
-    final ComponentElement                    rootElement       = new ComponentElement().setText("");
-    final Collection<ParserAbstractElement>   parsers           = new ArrayList<>(20);
-    final Collection<ParserApplicableElement> applicableParsers = new ArrayList<>(20);
+    final CompiledParser   compiledParser;
+    final ParserSettings   settings;
+    final String           text;
+    final ParserContext    context;
+    final ComponentElement rootElement;
+
+    // state of parser elements, shared elements from compiled parser store own state here.
+    final int[]     indexes;
+    final boolean[] active;
+
+    final Deque<ComponentElement> levelQueue       = new ArrayDeque<>(8);
+    final Deque<ComponentElement> colorsQueue      = new ArrayDeque<>(8);
+    final Deque<ComponentElement> descriptionStack = new ArrayDeque<>(4);
+
+    boolean escaped     = false;
+    char    color       = NULL;
+    int     indexOfText = 0;
+
+    // pending text is stored as range of source text, builder is only used if text isn't continuous, like after escape char.
+    final StringBuilder sb        = new StringBuilder(128);
+    int                 textStart = NONE;
+    int                 textEnd   = NONE;
 
     public Parser(String toParse, @Nullable ParserSettings settings)
     {
+        this(CompiledParser.of(settings), toParse);
+    }
+
+    Parser(CompiledParser compiledParser, String toParse)
+    {
+        this.compiledParser = compiledParser;
+        this.settings = compiledParser.settings;
+        this.text = toParse;
         this.context = new ParserContext(toParse);
-        this.settings = (settings == null) ? ParserSettings.ALL_ALLOWED : settings;
+        this.indexes = new int[compiledParser.elementsCount];
+        this.active = new boolean[compiledParser.elementsCount];
+        Arrays.fill(this.indexes, NONE);
+        this.rootElement = new ComponentElement().setText("");
+        this.levelQueue.add(this.rootElement);
+    }
 
-        this.initParsers();
+    /**
+     * Creates parser that continues parsing of given text from given checkpoint, nodes will be added to tree of that checkpoint.
+     *
+     * @param compiledParser
+     *         compiled parser used to create checkpoint.
+     * @param toParse
+     *         text to parse, text before position of checkpoint must be this same as in text used to create checkpoint.
+     * @param rootElement
+     *         root element of tree of checkpoint.
+     * @param checkpoint
+     *         checkpoint to continue from.
+     */
+    Parser(CompiledParser compiledParser, String toParse, ComponentElement rootElement, ParserCheckpoint checkpoint)
+    {
+        this.compiledParser = compiledParser;
+        this.settings = compiledParser.settings;
+        this.text = toParse;
+        this.context = new ParserContext(toParse);
+        this.indexes = new int[compiledParser.elementsCount];
+        this.active = new boolean[compiledParser.elementsCount];
+        this.rootElement = rootElement;
+        checkpoint.restore(this);
     }
 
-    private void initParsers()
+    /**
+     * Parse text and returns json representation of parsed message. <br>
+     * Message is serialized only once, unless {@link ParserSettings} contains {@link ParserOptimizerListener} that requires size of message before
+     * optimization.
+     *
+     * @return json representation of parsed message.
+     */
+    public String parse()
     {
-        if (this.settings.underlineEnabled)
-        {
-            this.addParser(new ParserFormat(this, '_', (p, e) -> e.setUnderlined(true), (p, e) -> e.isUnderlined()));
-        }
-        if (this.settings.italicEnabled)
-        {
-            this.addParser(new ParserFormat(this, '/', (p, e) -> e.setItalic(true), (p, e) -> e.isItalic()));
-        }
-        if (this.settings.boldEnabled)
-        {
-            this.addParser(new ParserFormat(this, '*', (p, e) -> e.setBold(true), (p, e) -> e.isBold()));
-        }
-        if (this.settings.strikethroughEnabled)
-        {
-            this.addParser(new ParserFormat(this, '~', (p, e) -> e.setStrikethrough(true), (p, e) -> e.isStrikethrough()));
-        }
-        if (this.settings.obfuscateEnabled)
-        {
-            this.addParser(new ParserFormat(this, '%', (p, e) -> e.setObfuscated(true), (p, e) -> e.isObfuscated()));
-        }
-        if (this.settings.alternateColorCharEnabled)
-        {
-            this.addParser(this.colorParser = new ParserColor(this));
-        }
-        if (! this.settings.colorCharEnabled)
-        {
-            this.addParser(new ParserSkipColor(this));
-        }
-        this.addParser(new ParserDescriptionElement(this));
+        this.parseText();
+        String json = this.optimize();
+        return (json == null) ? this.serialize() : json;
+    }
+
+    /**
+     * Parse text and returns root element of parsed message, without serializing it.
+     *
+     * @return root element of parsed message.
+     */
+    ComponentElement parseElement()
+    {
+        this.parseText();
+        this.optimize();
+        return this.rootElement;
     }
 
-    private void addParser(ParserAbstractElement parser)
+    private void parseText()
     {
-        this.parsers.add(parser);
-        if (parser instanceof ParserApplicableElement)
+        ChatMetrics metrics = this.settings.metrics;
+        if (metrics == null)
         {
-            this.applicableParsers.add((ParserApplicableElement) parser);
+            this.parseText(null, null);
+            return;
         }
+        long start = System.nanoTime();
+        this.parseText(null, null);
+        metrics.record(ChatMetrics.Stage.PARSE, null, System.nanoTime() - start, this.text.length());
     }
 
-    Deque<ComponentElement> levelQueue  = new LinkedList<>(ImmutableList.of(this.rootElement));
-    Deque<ComponentElement> colorsQueue = new LinkedList<>();
-
-    @Nullable ParserColor colorParser;
-    boolean       escaped     = false;
-    StringBuilder sb          = new StringBuilder(128);
-    int           indexOfText = 0;
-
-    public String parse()
+    /**
+     * Parse text from current position of parser. <br>
+     * If list for checkpoints is given, state of parser is recorded after each markup element that left parser without pending text, and parsing
+     * stops on first recorded checkpoint accepted by given predicate, without flushing rest of text.
+     *
+     * @param checkpoints
+     *         list for recorded checkpoints, or null if checkpoints should not be recorded.
+     * @param stop
+     *         predicate that decides if parser should stop on recorded checkpoint.
+     *
+     * @return checkpoint where parser stopped, or null if whole text was parsed.
+     */
+    @Nullable
+    ParserCheckpoint parseText(@Nullable List<ParserCheckpoint> checkpoints, @Nullable Predicate<ParserCheckpoint> stop)
     {
         ParserContext context = this.context;
         while (context.hasNext())
         {
             char c = context.next();
             boolean any = false;
-            for (ParserAbstractElement parser : this.parsers)
+            for (ParserAbstractElement element : this.compiledParser.getHandlers(c))
             {
-                any |= parser.onKey(context, c);
+                any |= element.onKey(this, context, c);
             }
             if (! any)
             {
@@ -136,7 +179,7 @@ public class Parser
                 {
                     if (this.escaped)
                     {
-                        this.sb.append(c);
+                        this.appendText(c);
                         this.escaped = false;
                     }
                     else
@@ -147,62 +190,150 @@ public class Parser
                 else
                 {
                     this.escaped = false;
-                    this.sb.append(c);
+                    this.appendText(c);
+                }
+            }
+            else if ((checkpoints != null) && ! this.hasText() && ! this.escaped)
+            {
+                ParserCheckpoint checkpoint = new ParserCheckpoint(this);
+                checkpoints.add(checkpoint);
+                if ((stop != null) && stop.test(checkpoint))
+                {
+                    return checkpoint;
                 }
             }
         }
-
         this.prepareElement();
-        // TODO: remove this debug length code
-        System.out.println(this.rootElement.toString());
+        return null;
+    }
+
+    /**
+     * Optimize parsed message if optimizer is enabled.
+     *
+     * @return json representation of optimized message if it was already created for {@link ParserOptimizerListener}, null otherwise.
+     */
+    @Nullable
+    private String optimize()
+    {
+        if (! this.settings.useOptimizer)
+        {
+            return null;
+        }
+        ParserOptimizerListener listener = this.settings.optimizerListener;
+        if (listener == null)
+        {
+            this.optimizeTree();
+            return null;
+        }
         int length = this.rootElement.toString().length();
-        if (this.settings.useOptimizer)
+        this.optimizeTree();
+        String json = this.serialize();
+        listener.onOptimize(length, json.length());
+        return json;
+    }
+
+    private void optimizeTree()
+    {
+        ChatMetrics metrics = this.settings.metrics;
+        if (metrics == null)
         {
             this.rootElement.optimize();
+            return;
+        }
+        int nodes = this.rootElement.countNodes();
+        long start = System.nanoTime();
+        this.rootElement.optimize();
+        long time = System.nanoTime() - start;
+        metrics.record(ChatMetrics.Stage.OPTIMIZE, null, time, nodes - this.rootElement.countNodes());
+    }
+
+    private String serialize()
+    {
+        ChatMetrics metrics = this.settings.metrics;
+        if (metrics == null)
+        {
+            return this.rootElement.toString();
+        }
+        long start = System.nanoTime();
+        String json = this.rootElement.toString();
+        metrics.record(ChatMetrics.Stage.SERIALIZE, null, System.nanoTime() - start, json.length());
+        return json;
+    }
+
+    /**
+     * Appends char at current index of context to pending text. <br>
+     * Continuous text is only stored as range of source text, so it is copied only once, when element is created.
+     *
+     * @param c
+     *         char to append.
+     */
+    void appendText(char c)
+    {
+        int index = this.context.getIndex();
+        if ((this.sb.length() == 0) && (this.text.charAt(index) == c))
+        {
+            if (this.textStart == NONE)
+            {
+                this.textStart = index;
+                this.textEnd = index + 1;
+                return;
+            }
+            if (this.textEnd == index)
+            {
+                this.textEnd = index + 1;
+                return;
+            }
+        }
+        if (this.textStart != NONE)
+        {
+            this.sb.append(this.text, this.textStart, this.textEnd);
+            this.textStart = NONE;
         }
-        System.out.println(this.rootElement);
-        int newLength = this.rootElement.toString().length();
-        int saved = length - newLength;
-        System.out.println("Smaller by: " + saved + " (from: " + length + ", to: " + newLength + ") Use optimizer: " + this.settings.useOptimizer);
-        return this.rootElement.toString();
+        this.sb.append(c);
     }
 
-    void resetStringBuilder()
+    boolean hasText()
     {
-        this.sb = new StringBuilder(128);
+        return (this.textStart != NONE) || (this.sb.length() != 0);
     }
 
+    /**
+     * Creates element from pending text and adds it to current level, pending text is cleared.
+     */
     void prepareElement()
     {
-        if (this.sb.length() == 0)
+        String text;
+        if (this.textStart != NONE)
+        {
+            text = this.text.substring(this.textStart, this.textEnd);
+            this.textStart = NONE;
+        }
+        else if (this.sb.length() != 0)
+        {
+            text = this.sb.toString();
+            this.sb.setLength(0);
+        }
+        else
         {
             return;
         }
-        String text = this.sb.toString();
         ComponentElement element;
         if (this.settings.autoLinksEnabled)
         {
             List<ComponentElement> allElements = new ArrayList<>(5);
-            Matcher matcher = URL_PATTERN.matcher(text);
             int lastMatchEnd = 0;
-            while (matcher.find())
+            UrlScanner scanner = new UrlScanner(text);
+            while (scanner.find())
             {
-                String group = matcher.group();
-                if (group.startsWith("http://"))
-                {
-                    group = group.substring(7);
-                }
-                else if (group.startsWith("https://"))
-                {
-                    group = group.substring(8);
-                }
-                int start = matcher.start();
+                String url = text.substring(scanner.start(), scanner.end());
+                String group = UrlScanner.getDisplayText(url);
+                int start = scanner.start();
                 if (start != lastMatchEnd)
                 {
                     allElements.add(new ComponentElement().setText(text.substring(lastMatchEnd, start)));
                 }
-                allElements.add(new ComponentElement().setText(group).setClickEvent(ChatMessageEvent.openURL(matcher.group())));
-                lastMatchEnd = matcher.end();
+                allElements.add(new ComponentElement().setText(group).setClickEvent(ChatMessageEvent.openURL(url)));
+                lastMatchEnd = scanner.end();
             }
             if (lastMatchEnd < text.length())
             {
@@ -224,15 +355,11 @@ public class Parser
         ComponentElement element = new ComponentElement().setText("");
         this.levelQueue.getLast().addExtra(element);
         this.levelQueue.add(element);
-        for (ParserAbstractElement abstractElementParser : this.parsers)
+        for (ParserApplicableElement applicableElement : this.compiledParser.applicableElements)
         {
-            if (abstractElementParser instanceof ParserApplicableElement)
+            if (applicableElement.isActive(this) && ! applicableElement.check(this, element))
             {
-                ParserApplicableElement parser = (ParserApplicableElement) abstractElementParser;
-                if (parser.active && ! parser.check(element))
-                {
-                    parser.apply(element);
-                }
+                applicableElement.apply(this, element);
             }
         }
         return element;
@@ -26,16 +26,27 @@ package org.diorite.chat;
 
 import org.diorite.commons.ParserContext;
 
+/**
+ * Base class of markup elements handled by {@link CompiledParser}. <br>
+ * Elements are shared between all parsers created from this same compiled parser, so all parse state must be stored in {@link Parser} instance, slot
+ * of element state in parser is selected by {@link #id}.
+ */
 abstract class ParserAbstractElement
 {
-    protected final Parser parser;
+    final int    id;
+    final char[] keys;
+
+    protected ParserAbstractElement(int id, char... keys)
+    {
+        this.id = id;
+        this.keys = keys;
+    }
 
-    int index = Parser.NONE;
-    boolean active;
+    boolean isActive(Parser parser) {return parser.active[this.id];}
 
-    protected ParserAbstractElement(Parser parser) {this.parser = parser;}
+    void setActive(Parser parser, boolean active) {parser.active[this.id] = active;}
 
-    void deactivate() {this.active = false;}
+    void deactivate(Parser parser) {parser.active[this.id] = false;}
 
-    abstract boolean onKey(ParserContext context, char c);
+    abstract boolean onKey(Parser parser, ParserContext context, char c);
 }
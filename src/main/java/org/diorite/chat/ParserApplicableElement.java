@@ -26,12 +26,12 @@ package org.diorite.chat;
 
 abstract class ParserApplicableElement extends ParserAbstractElement
 {
-    protected ParserApplicableElement(Parser parser)
+    protected ParserApplicableElement(int id, char... keys)
     {
-        super(parser);
+        super(id, keys);
     }
 
-    abstract boolean check(ComponentElement element);
+    abstract boolean check(Parser parser, ComponentElement element);
 
-    abstract void apply(ComponentElement element);
+    abstract void apply(Parser parser, ComponentElement element);
 }
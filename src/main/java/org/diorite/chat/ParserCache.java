@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded cache of parsed chat markup, entries are keyed by text and {@link ParserSettings} used to parse it and least recently used entries
+ * are evicted first. <br>
+ * Cached json is shared between all callers, parsed component trees are stored as {@link CompactComponentTree} and new tree is created
+ * from it for each caller, so cached tree is never exposed. <br>
+ * Note that {@link ParserOptimizerListener} is not invoked when message is taken from cache.
+ */
+public final class ParserCache
+{
+    private final Cache<Key, Entry> cache;
+
+    private ParserCache(Cache<Key, Entry> cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Create new cache that can store up to given amount of parsed messages.
+     *
+     * @param maximumSize
+     *         max amount of cached messages.
+     *
+     * @return created cache.
+     */
+    public static ParserCache bySize(long maximumSize)
+    {
+        return new ParserCache(CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build());
+    }
+
+    /**
+     * Create new cache that can store parsed messages up to given total weight, where weight of entry is length of source text and length
+     * of its json representation.
+     *
+     * @param maximumWeight
+     *         max total weight of cached messages.
+     *
+     * @return created cache.
+     */
+    public static ParserCache byWeight(long maximumWeight)
+    {
+        return new ParserCache(CacheBuilder.newBuilder()
+                                           .maximumWeight(maximumWeight)
+                                           .<Key, Entry>weigher((key, entry) -> key.text.length() + entry.json.length())
+                                           .recordStats()
+                                           .build());
+    }
+
+    /**
+     * Parse given markup text and returns json representation of parsed message, cached result is used if possible.
+     *
+     * @param text
+     *         markup text to parse.
+     * @param settings
+     *         settings of parser, {@link ParserSettings#ALL_ALLOWED} is used if null.
+     *
+     * @return json representation of parsed message.
+     */
+    public String parse(String text, @Nullable ParserSettings settings)
+    {
+        return this.getEntry(text, settings).json;
+    }
+
+    /**
+     * Parse given markup text and returns parsed message, cached result is used if possible. <br>
+     * Each call returns new message created from cached tree, so returned message can be freely modified.
+     *
+     * @param text
+     *         markup text to parse.
+     * @param settings
+     *         settings of parser, {@link ParserSettings#ALL_ALLOWED} is used if null.
+     *
+     * @return parsed message.
+     */
+    public ChatMessage parseMessage(String text, @Nullable ParserSettings settings)
+    {
+        return this.getEntry(text, settings).tree.toChatMessage();
+    }
+
+    private Entry getEntry(String text, @Nullable ParserSettings settings)
+    {
+        CompiledParser compiledParser = CompiledParser.of(settings);
+        Key key = new Key(text, compiledParser.settings);
+        Entry entry = this.cache.getIfPresent(key);
+        if (entry == null)
+        {
+            // parsing is cheap enough that it isn't worth to lock other threads, in worst case this same text is parsed few times.
+            ComponentElement element = compiledParser.parseElement(text);
+            entry = new Entry(CompactComponentTree.of(element), element.toString());
+            this.cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns amount of messages that were taken from cache.
+     *
+     * @return amount of cache hits.
+     */
+    public long getHitCount()
+    {
+        return this.cache.stats().hitCount();
+    }
+
+    /**
+     * Returns amount of messages that had to be parsed.
+     *
+     * @return amount of cache misses.
+     */
+    public long getMissCount()
+    {
+        return this.cache.stats().missCount();
+    }
+
+    /**
+     * Returns amount of messages removed from cache because of size limit.
+     *
+     * @return amount of evicted messages.
+     */
+    public long getEvictionCount()
+    {
+        return this.cache.stats().evictionCount();
+    }
+
+    /**
+     * Returns approximate amount of cached messages.
+     *
+     * @return approximate amount of cached messages.
+     */
+    public long size()
+    {
+        return this.cache.size();
+    }
+
+    /**
+     * Remove all cached messages, statistics are not reset.
+     */
+    public void invalidateAll()
+    {
+        this.cache.invalidateAll();
+    }
+
+    @Override
+    public String toString()
+    {
+        CacheStats stats = this.cache.stats();
+        return "ParserCache{size=" + this.cache.size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() + ", evictions=" +
+               stats.evictionCount() + "}";
+    }
+
+    private static final class Key
+    {
+        private final String         text;
+        private final ParserSettings settings;
+        private final int            hashCode;
+
+        private Key(String text, ParserSettings settings)
+        {
+            this.text = text;
+            this.settings = settings;
+            this.hashCode = (31 * text.hashCode()) + settings.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (! (o instanceof Key))
+            {
+                return false;
+            }
+            Key that = (Key) o;
+            return (this.hashCode == that.hashCode) && this.text.equals(that.text) && this.settings.equals(that.settings);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hashCode;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final CompactComponentTree tree;
+        private final String               json;
+
+        private Entry(CompactComponentTree tree, String json)
+        {
+            this.tree = tree;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Snapshot of {@link Parser} state recorded between markup elements, when parser does not have any pending text. <br>
+ * Snapshot stores open elements of parser together with amount of children they had at that time, so parser can be resumed from this place after
+ * removing all nodes created later, see {@link IncrementalParser}.
+ */
+final class ParserCheckpoint
+{
+    // index of first char that was not consumed by parser.
+    final int       position;
+    final char      color;
+    final int[]     indexes;
+    final boolean[] active;
+
+    final ComponentElement[] levels;
+    final int[]              levelSizes;
+    final ComponentElement[] colors;
+    final ComponentElement[] descriptions;
+    final int[]              descriptionSizes;
+
+    ParserCheckpoint(Parser parser)
+    {
+        this.position = parser.context.getIndex() + 1;
+        this.color = parser.color;
+        this.indexes = parser.indexes.clone();
+        this.active = parser.active.clone();
+        this.levels = toArray(parser.levelQueue);
+        this.levelSizes = sizes(this.levels);
+        this.colors = toArray(parser.colorsQueue);
+        this.descriptions = toArray(parser.descriptionStack);
+        this.descriptionSizes = sizes(this.descriptions);
+    }
+
+    private ParserCheckpoint(int position, char color, int[] indexes, boolean[] active, ComponentElement[] levels, int[] levelSizes,
+                             ComponentElement[] colors, ComponentElement[] descriptions, int[] descriptionSizes)
+    {
+        this.position = position;
+        this.color = color;
+        this.indexes = indexes;
+        this.active = active;
+        this.levels = levels;
+        this.levelSizes = levelSizes;
+        this.colors = colors;
+        this.descriptions = descriptions;
+        this.descriptionSizes = descriptionSizes;
+    }
+
+    /**
+     * Restores state of given parser, parser will continue from {@link #position}. <br>
+     * Children created after this checkpoint must be already removed from open elements.
+     *
+     * @param parser
+     *         parser to restore.
+     */
+    void restore(Parser parser)
+    {
+        parser.context.setIndex(this.position - 1);
+        parser.color = this.color;
+        System.arraycopy(this.indexes, 0, parser.indexes, 0, this.indexes.length);
+        System.arraycopy(this.active, 0, parser.active, 0, this.active.length);
+        parser.levelQueue.clear();
+        parser.levelQueue.addAll(Arrays.asList(this.levels));
+        parser.colorsQueue.clear();
+        parser.colorsQueue.addAll(Arrays.asList(this.colors));
+        parser.descriptionStack.clear();
+        parser.descriptionStack.addAll(Arrays.asList(this.descriptions));
+    }
+
+    /**
+     * Returns amount of children that given open element had when this checkpoint was created, or -1 if element wasn't open.
+     *
+     * @param element
+     *         element to check.
+     *
+     * @return amount of children of given element.
+     */
+    int getSize(ComponentElement element)
+    {
+        for (int i = 0; i < this.levels.length; i++)
+        {
+            if (this.levels[i] == element)
+            {
+                return this.levelSizes[i];
+            }
+        }
+        for (int i = 0; i < this.descriptions.length; i++)
+        {
+            if (this.descriptions[i] == element)
+            {
+                return this.descriptionSizes[i];
+            }
+        }
+        return - 1;
+    }
+
+    /**
+     * Returns copy of this checkpoint, recorded after given resynchronized checkpoint, that matches tree after edit of text. <br>
+     * Positions are shifted by difference of text length, elements replaced in edited part of text are changed to their new versions, and sizes
+     * are updated to include children that were created for edited part of text.
+     *
+     * @param delta
+     *         difference of text length.
+     * @param previous
+     *         checkpoint where previous parse was resynchronized.
+     * @param current
+     *         checkpoint where new parse was resynchronized.
+     * @param replaced
+     *         map of elements open in previous checkpoint to elements open in new one.
+     *
+     * @return moved checkpoint.
+     */
+    ParserCheckpoint move(int delta, ParserCheckpoint previous, ParserCheckpoint current, Map<ComponentElement, ComponentElement> replaced)
+    {
+        int[] indexes = this.indexes.clone();
+        for (int i = 0; i < indexes.length; i++)
+        {
+            if (indexes[i] == Parser.NONE)
+            {
+                continue;
+            }
+            // element was opened before resynchronization, so it is still open at that checkpoint.
+            indexes[i] = (indexes[i] < previous.position) ? current.indexes[i] : (indexes[i] + delta);
+        }
+        ComponentElement[] levels = this.levels.clone();
+        int[] levelSizes = this.levelSizes.clone();
+        move(levels, levelSizes, previous, current, replaced);
+        ComponentElement[] colors = this.colors.clone();
+        move(colors, null, previous, current, replaced);
+        ComponentElement[] descriptions = this.descriptions.clone();
+        int[] descriptionSizes = this.descriptionSizes.clone();
+        move(descriptions, descriptionSizes, previous, current, replaced);
+        return new ParserCheckpoint(this.position + delta, this.color, indexes, this.active, levels, levelSizes, colors, descriptions,
+                                    descriptionSizes);
+    }
+
+    private static void move(ComponentElement[] elements, @Nullable int[] sizes, ParserCheckpoint previous, ParserCheckpoint current,
+                             Map<ComponentElement, ComponentElement> replaced)
+    {
+        for (int i = 0; i < elements.length; i++)
+        {
+            ComponentElement element = elements[i];
+            ComponentElement replacement = replaced.get(element);
+            if (replacement == null) // created after resynchronization
+            {
+                continue;
+            }
+            if (sizes != null)
+            {
+                sizes[i] += current.getSize(replacement) - previous.getSize(element);
+            }
+            elements[i] = replacement;
+        }
+    }
+
+    private static ComponentElement[] toArray(Collection<ComponentElement> elements)
+    {
+        return elements.toArray(new ComponentElement[elements.size()]);
+    }
+
+    private static int[] sizes(ComponentElement[] elements)
+    {
+        int[] sizes = new int[elements.length];
+        for (int i = 0; i < elements.length; i++)
+        {
+            sizes[i] = (elements[i].extra == null) ? 0 : elements[i].extra.size();
+        }
+        return sizes;
+    }
+}
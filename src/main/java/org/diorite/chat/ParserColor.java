@@ -28,24 +28,22 @@ import org.diorite.commons.ParserContext;
 
 class ParserColor extends ParserApplicableElement
 {
-    char color = Parser.NULL;
-
-    ParserColor(Parser parser)
+    ParserColor(int id, char alternateColorChar)
     {
-        super(parser);
+        super(id, alternateColorChar);
     }
 
     @Override
-    boolean onKey(ParserContext context, char c)
+    boolean onKey(Parser parser, ParserContext context, char c)
     {
-        if (c != this.parser.settings.alternateColorChar)
+        if (c != this.keys[0])
         {
             return false;
         }
-        if (this.parser.escaped)
+        if (parser.escaped)
         {
-            this.parser.sb.append(c);
-            this.parser.escaped = false;
+            parser.appendText(c);
+            parser.escaped = false;
             return true;
         }
         char next = context.next();
@@ -53,45 +51,44 @@ class ParserColor extends ParserApplicableElement
         if (byChar == null)
         {
             context.previous();
-            this.parser.sb.append(c);
+            parser.appendText(c);
             return true;
         }
-        this.active = true;
-        this.parser.prepareElement();
-        this.parser.resetStringBuilder();
-        this.color = next;
-        this.parser.increaseLevel();
+        this.setActive(parser, true);
+        parser.prepareElement();
+        parser.color = next;
+        parser.increaseLevel();
         return true;
     }
 
     @Override
-    void apply(ComponentElement element)
+    void apply(Parser parser, ComponentElement element)
     {
-        if (this.color == Parser.NULL)
+        if (parser.color == Parser.NULL)
         {
             return;
         }
-        ChatColor byChar = ChatColor.getByChar(this.color);
+        ChatColor byChar = ChatColor.getByChar(parser.color);
         if (byChar == null)
         {
-            throw new IllegalStateException("Unknown color: " + this.color);
+            throw new IllegalStateException("Unknown color: " + parser.color);
         }
-        this.color = Parser.NULL;
+        parser.color = Parser.NULL;
         element.setColor(byChar);
-        this.parser.colorsQueue.add(element);
+        parser.colorsQueue.add(element);
     }
 
     @Override
-    boolean check(ComponentElement element)
+    boolean check(Parser parser, ComponentElement element)
     {
-        if (this.color == Parser.NULL)
+        if (parser.color == Parser.NULL)
         {
             return false;
         }
-        ChatColor byChar = ChatColor.getByChar(this.color);
+        ChatColor byChar = ChatColor.getByChar(parser.color);
         if (byChar == null)
         {
-            throw new IllegalStateException("Unknown color: " + this.color);
+            throw new IllegalStateException("Unknown color: " + parser.color);
         }
         return false;
     }
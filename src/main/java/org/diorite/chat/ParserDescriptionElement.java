@@ -24,9 +24,6 @@
 
 package org.diorite.chat;
 
-import java.util.Deque;
-import java.util.LinkedList;
-
 import org.diorite.KeyBind;
 import org.diorite.commons.ParserContext;
 import org.diorite.commons.math.DioriteMathUtils;
@@ -40,39 +37,34 @@ class ParserDescriptionElement extends ParserAbstractElement
     private static final char START_EVENT = '(';
     private static final char END_EVENT   = ')';
 
-    Deque<ComponentElement> elementsStack = new LinkedList<>();
-
-    ParserDescriptionElement(Parser parser)
+    ParserDescriptionElement(int id)
     {
-        super(parser);
-        this.active = true;
+        super(id, START_DESC, END_DESC);
     }
 
     @Override
-    boolean onKey(ParserContext context, char c)
+    boolean onKey(Parser parser, ParserContext context, char c)
     {
         if ((c != START_DESC) && (c != END_DESC))
         {
             return false;
         }
-        if (this.parser.escaped)
+        if (parser.escaped)
         {
-            this.parser.sb.append(c);
-            this.parser.escaped = false;
+            parser.appendText(c);
+            parser.escaped = false;
             return true;
         }
         if (c == START_DESC)
         {
-            this.parser.prepareElement();
-            this.parser.resetStringBuilder();
-            ComponentElement componentElement = this.parser.increaseLevel();
-            this.elementsStack.addLast(componentElement);
+            parser.prepareElement();
+            ComponentElement componentElement = parser.increaseLevel();
+            parser.descriptionStack.addLast(componentElement);
             return true;
         }
-        this.parser.prepareElement();
-        this.parser.resetStringBuilder();
-        this.parser.decreaseLevel();
-        ComponentElement element = this.elementsStack.pollLast();
+        parser.prepareElement();
+        parser.decreaseLevel();
+        ComponentElement element = parser.descriptionStack.pollLast();
         if (element == null)
         {
             return true;
@@ -80,7 +72,7 @@ class ParserDescriptionElement extends ParserAbstractElement
         char next = context.next();
         if (next == '(')
         {
-            Object parsedEvent = this.parseEventObject(context);
+            Object parsedEvent = this.parseEventObject(parser, context);
             if (parsedEvent instanceof ChatMessageEvent)
             {
                 element.addEvent((ChatMessageEvent) parsedEvent);
@@ -101,7 +93,7 @@ class ParserDescriptionElement extends ParserAbstractElement
         return true;
     }
 
-    Object parseEventObject(ParserContext context)
+    Object parseEventObject(Parser parser, ParserContext context)
     {
         char next = context.next();
         if (next == '<')
@@ -127,7 +119,7 @@ class ParserDescriptionElement extends ParserAbstractElement
                 if (type.startsWith("e")) // entity
                 {
                     NbtTag nbtTag = NbtSerialization.fromMojangson(context, true);
-                    if (this.parser.settings.hoverShowEntityEnabled)
+                    if (parser.settings.hoverShowEntityEnabled)
                     {
                         return ChatMessageEvent.showEntity(nbtTag);
                     }
@@ -136,7 +128,7 @@ class ParserDescriptionElement extends ParserAbstractElement
                 if (type.startsWith("i")) // item
                 {
                     NbtTag nbtTag = NbtSerialization.fromMojangson(context, true);
-                    if (this.parser.settings.hoverShowItemEnabled)
+                    if (parser.settings.hoverShowItemEnabled)
                     {
                         return ChatMessageEvent.showItem(nbtTag);
                     }
@@ -146,7 +138,7 @@ class ParserDescriptionElement extends ParserAbstractElement
                 {
                     String text = this.readFully(context);
                     String fullText = "(<" + type + ":" + text + ">)";
-                    if (this.parser.settings.keyBindEnabled)
+                    if (parser.settings.keyBindEnabled)
                     {
                         try
                         {
@@ -163,13 +155,13 @@ class ParserDescriptionElement extends ParserAbstractElement
                 {
                     String text = this.readFully(context);
                     String fullText = "(<" + type + ":" + text + ">)";
-                    if (! this.parser.settings.hoverAchievementEnabled && ! this.parser.settings.hoverStatisticsEnabled)
+                    if (! parser.settings.hoverAchievementEnabled && ! parser.settings.hoverStatisticsEnabled)
                     {
                         return fullText;
                     }
                     if (type.startsWith("a") && ! text.startsWith("achievement"))
                     {
-                        if (! this.parser.settings.hoverAchievementEnabled)
+                        if (! parser.settings.hoverAchievementEnabled)
                         {
                             return fullText;
                         }
@@ -177,14 +169,14 @@ class ParserDescriptionElement extends ParserAbstractElement
                     }
                     else if (type.startsWith("s") && ! text.startsWith("stat"))
                     {
-                        if (! this.parser.settings.hoverStatisticsEnabled)
+                        if (! parser.settings.hoverStatisticsEnabled)
                         {
                             return fullText;
                         }
                         text = "stat." + text;
                     }
-                    else if ((text.startsWith("achievement") && ! this.parser.settings.hoverAchievementEnabled) ||
-                             ! this.parser.settings.hoverStatisticsEnabled)
+                    else if ((text.startsWith("achievement") && ! parser.settings.hoverAchievementEnabled) ||
+                             ! parser.settings.hoverStatisticsEnabled)
                     {
                         return fullText;
                     }
@@ -206,27 +198,27 @@ class ParserDescriptionElement extends ParserAbstractElement
         context.previous();
         String text = this.readFully(context);
         Integer page = DioriteMathUtils.asInt(text);
-        if ((page != null) && this.parser.settings.pageLinksEnabled)
+        if ((page != null) && parser.settings.pageLinksEnabled)
         {
             return ChatMessageEvent.changePage(page);
         }
-        if (text.startsWith("/") && this.parser.settings.commandSuggestionEnabled)
+        if (text.startsWith("/") && parser.settings.commandSuggestionEnabled)
         {
             return ChatMessageEvent.suggestCommand(text.substring("/".length()));
         }
-        if (text.startsWith("?") && this.parser.settings.insertionEnabled)
+        if (text.startsWith("?") && parser.settings.insertionEnabled)
         {
             return ChatMessageEvent.appendChat(text.substring("?".length()));
         }
-        if (text.startsWith("!/") && this.parser.settings.commandInvokeEnabled)
+        if (text.startsWith("!/") && parser.settings.commandInvokeEnabled)
         {
             return ChatMessageEvent.runCommand(text.substring("!/".length()));
         }
-        if (text.startsWith("file:") && this.parser.settings.fileLinksEnabled)
+        if (text.startsWith("file:") && parser.settings.fileLinksEnabled)
         {
             return ChatMessageEvent.openFile(text.substring("file:".length()));
         }
-        if (this.parser.settings.linksEnabled)
+        if (parser.settings.linksEnabled)
         {
             return ChatMessageEvent.openURL(text);
         }
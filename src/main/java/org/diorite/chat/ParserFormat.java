@@ -38,17 +38,17 @@ class ParserFormat extends ParserApplicableElement
     @Nullable final BiConsumer<? super ParserFormat, ComponentElement>  applyFunc;
     @Nullable final BiPredicate<? super ParserFormat, ComponentElement> checkFunc;
 
-    ParserFormat(Parser parser, char key, @Nullable BiConsumer<? super ParserFormat, ComponentElement> applyFunc,
+    ParserFormat(int id, char key, @Nullable BiConsumer<? super ParserFormat, ComponentElement> applyFunc,
                  @Nullable BiPredicate<? super ParserFormat, ComponentElement> checkFunc)
     {
-        super(parser);
+        super(id, key);
         this.key = key;
         this.applyFunc = applyFunc;
         this.checkFunc = checkFunc;
     }
 
     @Override
-    boolean check(ComponentElement element)
+    boolean check(Parser parser, ComponentElement element)
     {
         if (this.checkFunc != null)
         {
@@ -58,7 +58,7 @@ class ParserFormat extends ParserApplicableElement
     }
 
     @Override
-    void apply(ComponentElement element)
+    void apply(Parser parser, ComponentElement element)
     {
         if (this.applyFunc != null)
         {
@@ -67,16 +67,16 @@ class ParserFormat extends ParserApplicableElement
     }
 
     @Override
-    boolean onKey(ParserContext context, char c)
+    boolean onKey(Parser parser, ParserContext context, char c)
     {
         if (c != this.key)
         {
             return false;
         }
-        if (this.parser.escaped)
+        if (parser.escaped)
         {
-            this.parser.sb.append(c);
-            this.parser.escaped = false;
+            parser.appendText(c);
+            parser.escaped = false;
             return true;
         }
         int currentIndex = context.getIndex();
@@ -86,40 +86,38 @@ class ParserFormat extends ParserApplicableElement
         context.setIndex(currentIndex);
         if ((checkNext == this.key) || (checkPrev == this.key))
         {
-            this.parser.sb.append(c);
+            parser.appendText(c);
             return true;
         }
-        if (this.index == Parser.NONE)
+        if (parser.indexes[this.id] == Parser.NONE)
         {
             char next = context.next();
             context.previous();
             if (next == Parser.SPACE)
             {
-                this.parser.sb.append(c);
+                parser.appendText(c);
                 return true;
             }
             if (next == Parser.END)
             {
-                this.parser.sb.append(this.key);
+                parser.appendText(this.key);
                 return true;
             }
-            this.index = context.getIndex();
-            this.parser.prepareElement();
-            this.parser.resetStringBuilder();
-            this.active = true;
-            this.parser.increaseLevel();
+            parser.indexes[this.id] = context.getIndex();
+            parser.prepareElement();
+            this.setActive(parser, true);
+            parser.increaseLevel();
             return true;
         }
-        if (this.index == (context.getEndIndex() - 1))
+        if (parser.indexes[this.id] == (context.getEndIndex() - 1))
         {
-            this.parser.sb.append(this.key);
+            parser.appendText(this.key);
         }
-        this.parser.prepareElement();
-        this.parser.resetStringBuilder();
-        this.parser.indexOfText = context.getIndex() + 1;
-        this.active = false;
-        this.index = Parser.NONE;
-        this.parser.decreaseLevel();
+        parser.prepareElement();
+        parser.indexOfText = context.getIndex() + 1;
+        this.setActive(parser, false);
+        parser.indexes[this.id] = Parser.NONE;
+        parser.decreaseLevel();
         return true;
     }
 }
@@ -24,6 +24,8 @@
 
 package org.diorite.chat;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.lang3.builder.Builder;
 
 public final class ParserSettings implements Cloneable
@@ -71,17 +73,41 @@ public final class ParserSettings implements Cloneable
     boolean selectorEnabled           = true;
     boolean keyBindEnabled            = true;
 
+    @Nullable ParserOptimizerListener optimizerListener;
+    @Nullable ChatMetrics             metrics;
+
+    @Nullable private volatile CompiledParser compiledParser;
+
     public static ParserSettingsBuilder builder()
     {
         return new ParserSettingsBuilder();
     }
 
+    /**
+     * Returns parser compiled for this settings, parser is created on first use and then reused.
+     *
+     * @return parser compiled for this settings.
+     */
+    public CompiledParser getCompiledParser()
+    {
+        CompiledParser compiledParser = this.compiledParser;
+        if (compiledParser == null)
+        {
+            // compiled parser is immutable, so in worst case few equal instances are created and only one of them is kept.
+            compiledParser = new CompiledParser(this);
+            this.compiledParser = compiledParser;
+        }
+        return compiledParser;
+    }
+
     @Override
     protected ParserSettings clone()
     {
         try
         {
-            return (ParserSettings) super.clone();
+            ParserSettings clone = (ParserSettings) super.clone();
+            clone.compiledParser = null;
+            return clone;
         }
         catch (CloneNotSupportedException e)
         {
@@ -89,6 +115,58 @@ public final class ParserSettings implements Cloneable
         }
     }
 
+    // all options that affect parsing packed into single int, listener and metrics aren't included as they don't change result of parsing.
+    private int flags()
+    {
+        int flags = 0;
+        flags |= this.useOptimizer ? (1 << 0) : 0;
+        flags |= this.alternateColorCharEnabled ? (1 << 1) : 0;
+        flags |= this.colorCharEnabled ? (1 << 2) : 0;
+        flags |= this.underlineEnabled ? (1 << 3) : 0;
+        flags |= this.italicEnabled ? (1 << 4) : 0;
+        flags |= this.boldEnabled ? (1 << 5) : 0;
+        flags |= this.strikethroughEnabled ? (1 << 6) : 0;
+        flags |= this.obfuscateEnabled ? (1 << 7) : 0;
+        flags |= this.linksEnabled ? (1 << 8) : 0;
+        flags |= this.autoLinksEnabled ? (1 << 9) : 0;
+        flags |= this.pageLinksEnabled ? (1 << 10) : 0;
+        flags |= this.fileLinksEnabled ? (1 << 11) : 0;
+        flags |= this.commandSuggestionEnabled ? (1 << 12) : 0;
+        flags |= this.commandInvokeEnabled ? (1 << 13) : 0;
+        flags |= this.insertionEnabled ? (1 << 14) : 0;
+        flags |= this.hoverTextEnabled ? (1 << 15) : 0;
+        flags |= this.hoverAchievementEnabled ? (1 << 16) : 0;
+        flags |= this.hoverStatisticsEnabled ? (1 << 17) : 0;
+        flags |= this.hoverShowItemEnabled ? (1 << 18) : 0;
+        flags |= this.hoverShowEntityEnabled ? (1 << 19) : 0;
+        flags |= this.translatableEnabled ? (1 << 20) : 0;
+        flags |= this.scoreEnabled ? (1 << 21) : 0;
+        flags |= this.selectorEnabled ? (1 << 22) : 0;
+        flags |= this.keyBindEnabled ? (1 << 23) : 0;
+        return flags;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (! (o instanceof ParserSettings))
+        {
+            return false;
+        }
+        ParserSettings that = (ParserSettings) o;
+        return (this.alternateColorChar == that.alternateColorChar) && (this.flags() == that.flags());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (31 * this.flags()) + this.alternateColorChar;
+    }
+
     public static class ParserSettingsBuilder implements Builder<ParserSettings>
     {
         final ParserSettings settings = new ParserSettings();
@@ -106,6 +184,16 @@ public final class ParserSettings implements Cloneable
             this.settings.useOptimizer = useOptimizer;
         }
 
+        public void setOptimizerListener(@Nullable ParserOptimizerListener optimizerListener)
+        {
+            this.settings.optimizerListener = optimizerListener;
+        }
+
+        public void setMetrics(@Nullable ChatMetrics metrics)
+        {
+            this.settings.metrics = metrics;
+        }
+
         public void setAlternateColorChar(char alternateColorChar)
         {
             this.settings.alternateColorChar = alternateColorChar;
@@ -238,6 +326,30 @@ public final class ParserSettings implements Cloneable
             return this;
         }
 
+        public ParserSettingsBuilder withOptimizerListener(ParserOptimizerListener optimizerListener)
+        {
+            this.settings.optimizerListener = optimizerListener;
+            return this;
+        }
+
+        public ParserSettingsBuilder withoutOptimizerListener()
+        {
+            this.settings.optimizerListener = null;
+            return this;
+        }
+
+        public ParserSettingsBuilder withMetrics(ChatMetrics metrics)
+        {
+            this.settings.metrics = metrics;
+            return this;
+        }
+
+        public ParserSettingsBuilder withoutMetrics()
+        {
+            this.settings.metrics = null;
+            return this;
+        }
+
         public ParserSettingsBuilder withAlternateColorChar()
         {
             this.settings.alternateColorCharEnabled = true;
@@ -28,14 +28,13 @@ import org.diorite.commons.ParserContext;
 
 class ParserSkipColor extends ParserAbstractElement
 {
-    ParserSkipColor(Parser parser)
+    ParserSkipColor(int id)
     {
-        super(parser);
-        this.active = true;
+        super(id, ChatColor.COLOR_CHAR);
     }
 
     @Override
-    boolean onKey(ParserContext context, char c)
+    boolean onKey(Parser parser, ParserContext context, char c)
     {
         if (c != ChatColor.COLOR_CHAR)
         {
@@ -46,7 +45,7 @@ class ParserSkipColor extends ParserAbstractElement
         if (byChar == null)
         {
             context.previous();
-            this.parser.sb.append(c);
+            parser.appendText(c);
         }
         return true;
     }
@@ -0,0 +1,495 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.diorite.chat;
+
+/**
+ * Single pass scanner of urls and host names used by {@link Parser} and {@link LegacyTextReader} to create links in text, used like
+ * {@link java.util.regex.Matcher}. <br>
+ * It finds exactly this same links as old regular expression used by parser:
+ * <pre>
+ * (?:(?:https?)://)?(?:\S+(?::\S*)?@)?(?:IPv4 address|host name)(?::\d{2,5})?(?:/[^\s]*)?
+ * </pre>
+ * where private IPv4 ranges are skipped and host name must end with top level domain of at least 2 letters. Like in regex, chars of host name
+ * are checked by code point, so supplementary characters (surrogate pairs) can't be part of host name. <br>
+ * Text is checked word by word and words without any '.' are skipped, as each link must contain at least one dot.
+ */
+final class UrlScanner
+{
+    private static final int NONE = - 1;
+
+    private final String text;
+    private final int    length;
+
+    private int position;
+    private int start = NONE;
+    private int end   = NONE;
+
+    // current word
+    private int     wordEnd;
+    private int     userInfoEnd  = NONE; // index of '@' that should be used by user info part, or NONE.
+    private int     userInfoLink = NONE; // end of link with user info.
+
+    // cached host name segment: [segmentStart, segmentEnd), with index of last "--" pair in it.
+    private int segmentStart = NONE;
+    private int segmentEnd   = NONE;
+    private int segmentPair  = NONE;
+
+    // range of dots that are known to not start any valid domain.
+    private int failedFrom  = NONE;
+    private int failedUntil = NONE;
+
+    UrlScanner(String text)
+    {
+        this.text = text;
+        // each link contains at least one dot, so text without dots can be skipped at once.
+        this.length = (text.indexOf('.') == NONE) ? 0 : text.length();
+    }
+
+    /**
+     * Find next link in text.
+     *
+     * @return true if link was found.
+     */
+    boolean find()
+    {
+        String text = this.text;
+        while (this.position < this.length)
+        {
+            if (this.position >= this.wordEnd)
+            {
+                while ((this.position < this.length) && isSpace(text.charAt(this.position)))
+                {
+                    this.position++;
+                }
+                if (! this.prepareWord())
+                {
+                    this.position = this.wordEnd;
+                    continue;
+                }
+            }
+            for (int i = this.position; i < this.wordEnd; i++)
+            {
+                int linkEnd = this.matchAt(i);
+                if (linkEnd != NONE)
+                {
+                    this.start = i;
+                    this.end = linkEnd;
+                    this.position = linkEnd;
+                    return true;
+                }
+            }
+            this.position = this.wordEnd;
+        }
+        this.start = NONE;
+        this.end = NONE;
+        return false;
+    }
+
+    /**
+     * Returns start index of last found link.
+     *
+     * @return start index of last found link.
+     */
+    int start()
+    {
+        return this.start;
+    }
+
+    /**
+     * Returns end index (exclusive) of last found link.
+     *
+     * @return end index of last found link.
+     */
+    int end()
+    {
+        return this.end;
+    }
+
+    /**
+     * Returns text that should be displayed for given link, http and https schemes are removed.
+     *
+     * @param url
+     *         found link.
+     *
+     * @return displayed text of link.
+     */
+    static String getDisplayText(String url)
+    {
+        if (url.startsWith("http://"))
+        {
+            return url.substring(7);
+        }
+        if (url.startsWith("https://"))
+        {
+            return url.substring(8);
+        }
+        return url;
+    }
+
+    private boolean prepareWord()
+    {
+        String text = this.text;
+        int wordEnd = this.position;
+        boolean hasDot = false;
+        while ((wordEnd < this.length) && ! isSpace(text.charAt(wordEnd)))
+        {
+            hasDot |= text.charAt(wordEnd) == '.';
+            wordEnd++;
+        }
+        this.wordEnd = wordEnd;
+        this.userInfoEnd = NONE;
+        this.userInfoLink = NONE;
+        if (! hasDot)
+        {
+            return false;
+        }
+        // user info is greedy, so last '@' followed by valid host is used.
+        for (int i = wordEnd - 1; i > this.position; i--)
+        {
+            if (text.charAt(i) != '@')
+            {
+                continue;
+            }
+            int linkEnd = this.host(i + 1);
+            if (linkEnd != NONE)
+            {
+                this.userInfoEnd = i;
+                this.userInfoLink = linkEnd;
+                break;
+            }
+        }
+        return true;
+    }
+
+    private int matchAt(int index)
+    {
+        int hostStart = this.scheme(index);
+        if (hostStart != NONE)
+        {
+            if (this.userInfoEnd > hostStart)
+            {
+                return this.userInfoLink;
+            }
+            int linkEnd = this.host(hostStart);
+            if (linkEnd != NONE)
+            {
+                return linkEnd;
+            }
+        }
+        if (this.userInfoEnd > index)
+        {
+            return this.userInfoLink;
+        }
+        return this.host(index);
+    }
+
+    private int scheme(int index)
+    {
+        String text = this.text;
+        if (! text.startsWith("http", index))
+        {
+            return NONE;
+        }
+        if (text.startsWith("s://", index + 4))
+        {
+            return index + 8;
+        }
+        if (text.startsWith("://", index + 4))
+        {
+            return index + 7;
+        }
+        return NONE;
+    }
+
+    private int host(int index)
+    {
+        if (index >= this.wordEnd)
+        {
+            return NONE;
+        }
+        int hostEnd = this.ipAddress(index);
+        if (hostEnd == NONE)
+        {
+            hostEnd = this.domain(index);
+            if (hostEnd == NONE)
+            {
+                return NONE;
+            }
+        }
+        String text = this.text;
+        if ((hostEnd < this.wordEnd) && (text.charAt(hostEnd) == ':'))
+        {
+            int digits = this.digits(hostEnd + 1);
+            if (digits >= 2)
+            {
+                hostEnd += 1 + Math.min(digits, 5);
+            }
+        }
+        if ((hostEnd < this.wordEnd) && (text.charAt(hostEnd) == '/'))
+        {
+            return this.wordEnd;
+        }
+        return hostEnd;
+    }
+
+    private int ipAddress(int index)
+    {
+        if (this.isPrivateAddress(index))
+        {
+            return NONE;
+        }
+        int digits = this.digits(index);
+        if ((digits == 0) || (digits > 3) || ! this.isDot(index + digits))
+        {
+            return NONE;
+        }
+        int octet = this.number(index, digits);
+        if ((this.text.charAt(index) == '0') || (octet > 223))
+        {
+            return NONE;
+        }
+        index += digits + 1;
+        for (int i = 0; i < 2; i++)
+        {
+            digits = this.digits(index);
+            if ((digits == 0) || (digits > 3) || ! this.isDot(index + digits))
+            {
+                return NONE;
+            }
+            if ((digits == 3) && ((this.number(index, digits) < 100) || (this.number(index, digits) > 255)))
+            {
+                return NONE;
+            }
+            index += digits + 1;
+        }
+        // last octet never use 3 digits, as first alternative of last octet ([1-9]\d?) always matches first.
+        if ((index >= this.wordEnd) || (this.text.charAt(index) < '1') || (this.text.charAt(index) > '9'))
+        {
+            return NONE;
+        }
+        return ((index + 1) < this.wordEnd) && isDigit(this.text.charAt(index + 1)) ? (index + 2) : (index + 1);
+    }
+
+    private boolean isPrivateAddress(int index)
+    {
+        String text = this.text;
+        if (text.startsWith("10", index))
+        {
+            if (this.isDottedNumbers(index + 2, 3))
+            {
+                return true;
+            }
+        }
+        else if (text.startsWith("127", index))
+        {
+            if (this.isDottedNumbers(index + 3, 3))
+            {
+                return true;
+            }
+        }
+        else if (text.startsWith("169.254", index) || text.startsWith("192.168", index))
+        {
+            if (this.isDottedNumbers(index + 7, 2))
+            {
+                return true;
+            }
+        }
+        if (text.startsWith("172.", index) && (this.digits(index + 4) >= 2))
+        {
+            int octet = this.number(index + 4, 2);
+            return (octet >= 16) && (octet <= 31) && this.isDottedNumbers(index + 6, 2);
+        }
+        return false;
+    }
+
+    // checks if text contains given amount of dots followed by 1-3 digits, only last group may be followed by more digits.
+    private boolean isDottedNumbers(int index, int groups)
+    {
+        for (int i = 0; i < groups; i++)
+        {
+            if (! this.isDot(index))
+            {
+                return false;
+            }
+            int digits = this.digits(index + 1);
+            if ((digits == 0) || ((i != (groups - 1)) && (digits > 3)))
+            {
+                return false;
+            }
+            index += digits + 1;
+        }
+        return true;
+    }
+
+    private int domain(int index)
+    {
+        String text = this.text;
+        if (! this.isLabelChar(index))
+        {
+            return NONE;
+        }
+        this.prepareSegment(index);
+        int dot = this.segmentEnd;
+        if ((this.segmentPair >= index) || ! this.isLabelChar(dot - 1) || ! this.isDot(dot))
+        {
+            return NONE;
+        }
+        if ((dot >= this.failedFrom) && (dot < this.failedUntil))
+        {
+            return NONE;
+        }
+        // find last segment after chain of valid labels that starts with at least 2 letters, it is used as top level domain.
+        int topLevelDomainEnd = NONE;
+        int segmentEnd = dot;
+        while (true)
+        {
+            int segmentStart = segmentEnd + 1;
+            int letters = 0;
+            boolean valid = true;
+            char last = '-';
+            segmentEnd = segmentStart;
+            while (segmentEnd < this.wordEnd)
+            {
+                char c = text.charAt(segmentEnd);
+                if (c == '-')
+                {
+                    valid &= last != '-';
+                }
+                else if (! this.isLabelChar(segmentEnd))
+                {
+                    break;
+                }
+                if ((letters == (segmentEnd - segmentStart)) && this.isTopLevelDomainChar(segmentEnd))
+                {
+                    letters++;
+                }
+                last = c;
+                segmentEnd++;
+            }
+            if (letters >= 2)
+            {
+                topLevelDomainEnd = segmentStart + letters;
+            }
+            valid &= (segmentEnd > segmentStart) && (text.charAt(segmentStart) != '-') && (last != '-');
+            if (! valid || ! this.isDot(segmentEnd))
+            {
+                break;
+            }
+        }
+        if (topLevelDomainEnd == NONE)
+        {
+            this.failedFrom = dot;
+            this.failedUntil = segmentEnd;
+        }
+        return topLevelDomainEnd;
+    }
+
+    private void prepareSegment(int index)
+    {
+        if ((index >= this.segmentStart) && (index < this.segmentEnd))
+        {
+            return;
+        }
+        String text = this.text;
+        int pair = NONE;
+        int end = index;
+        while (end < this.wordEnd)
+        {
+            char c = text.charAt(end);
+            if (c == '-')
+            {
+                if ((end > index) && (text.charAt(end - 1) == '-'))
+                {
+                    pair = end - 1;
+                }
+            }
+            else if (! this.isLabelChar(end))
+            {
+                break;
+            }
+            end++;
+        }
+        this.segmentStart = index;
+        this.segmentEnd = end;
+        this.segmentPair = pair;
+    }
+
+    private int digits(int index)
+    {
+        int end = index;
+        while ((end < this.wordEnd) && isDigit(this.text.charAt(end)))
+        {
+            end++;
+        }
+        return end - index;
+    }
+
+    private int number(int index, int digits)
+    {
+        int result = 0;
+        for (int i = index, end = index + digits; i < end; i++)
+        {
+            result = (result * 10) + (this.text.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private boolean isDot(int index)
+    {
+        return (index < this.wordEnd) && (this.text.charAt(index) == '.');
+    }
+
+    private static boolean isSpace(char c)
+    {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\u000B') || (c == '\f') || (c == '\r');
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return (c >= '0') && (c <= '9');
+    }
+
+    private boolean isTopLevelDomainChar(int index)
+    {
+        char c = this.text.charAt(index);
+        return ((c >= 'a') && (c <= 'z')) || ((c >= '\u00a1') && ! this.isSurrogatePair(index, c));
+    }
+
+    private boolean isLabelChar(int index)
+    {
+        return this.isTopLevelDomainChar(index) || isDigit(this.text.charAt(index));
+    }
+
+    // regex matches code points, so surrogate pair is single char outside of [\x{00a1}-\x{ffff}] range, but lone surrogates are in it.
+    private boolean isSurrogatePair(int index, char c)
+    {
+        String text = this.text;
+        if (Character.isHighSurrogate(c))
+        {
+            return ((index + 1) < text.length()) && Character.isLowSurrogate(text.charAt(index + 1));
+        }
+        return Character.isLowSurrogate(c) && (index > 0) && Character.isHighSurrogate(text.charAt(index - 1));
+    }
+}
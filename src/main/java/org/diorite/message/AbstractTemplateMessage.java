@@ -0,0 +1,302 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.diorite.chat.ChatMessage;
+import org.diorite.chat.ChatMessageType;
+import org.diorite.chat.ChatService;
+import org.diorite.chat.ChatTemplate;
+import org.diorite.chat.LocalizedMessageReceiver;
+import org.diorite.chat.MessageReceiver;
+import org.diorite.sender.CommandSender;
+
+/**
+ * Base class of {@link Message} implementations backed by {@link ChatTemplate} compiled for each language. <br>
+ * Placeholders of template are filled by {@link MessageData#getMessageKey()} of given data, target of message is available under its own
+ * message key, and {@link CommandSender} values are replaced by name of sender. Values can be also passed as {@link MessageArguments}, to
+ * avoid creating {@link MessageData} wrappers and boxing primitive values. <br>
+ * Broadcasts prepare message only once for each language if template does not use target of message, and send it using
+ * {@link ChatService#broadcast(ChatMessageType, Iterable, ChatMessage)}, so it is also serialized only once.
+ */
+public abstract class AbstractTemplateMessage implements Message
+{
+    protected final Locale                                               defaultLocale;
+    protected final Supplier<? extends Iterable<? extends CommandSender>> players;
+
+    /**
+     * Construct new template message.
+     *
+     * @param defaultLocale
+     *         language used when there is no language given or text for requested language does not exist.
+     * @param players
+     *         supplier of all players, used by broadcast methods without explicit targets.
+     */
+    protected AbstractTemplateMessage(Locale defaultLocale, Supplier<? extends Iterable<? extends CommandSender>> players)
+    {
+        this.defaultLocale = defaultLocale;
+        this.players = players;
+    }
+
+    /**
+     * Returns language used when there is no language given or text for requested language does not exist.
+     *
+     * @return default language.
+     */
+    public Locale getDefaultLocale()
+    {
+        return this.defaultLocale;
+    }
+
+    /**
+     * Returns compiled template of message for given language, or null if message can't be used in given language.
+     *
+     * @param lang
+     *         language of template.
+     *
+     * @return compiled template.
+     */
+    @Nullable
+    public abstract ChatTemplate getTemplate(Locale lang);
+
+    @Nullable
+    @Override
+    public ChatMessage prepare(CommandSender target, Locale lang, MessageData<?>... data)
+    {
+        try (MessageArguments arguments = MessageArguments.acquire())
+        {
+            return this.prepare(target, lang, arguments.setAll(data));
+        }
+    }
+
+    /**
+     * Prepare message for given player, language and arguments.
+     *
+     * @param target
+     *         target of message.
+     * @param lang
+     *         language to use if possible.
+     * @param arguments
+     *         values of placeholders.
+     *
+     * @return message object, null if message isn't enabled or can't be used.
+     */
+    @Nullable
+    public ChatMessage prepare(CommandSender target, Locale lang, MessageArguments arguments)
+    {
+        ChatTemplate template = this.getTemplate(lang);
+        if (template == null)
+        {
+            return null;
+        }
+        return fill(template, target, arguments);
+    }
+
+    @Nullable
+    @Override
+    public ChatMessage prepare(Locale lang, MessageData<?>... data)
+    {
+        try (MessageArguments arguments = MessageArguments.acquire())
+        {
+            return this.prepare(lang, arguments.setAll(data));
+        }
+    }
+
+    /**
+     * Prepare message for given language and arguments, note that not all messages can be used as static messages.
+     *
+     * @param lang
+     *         language to use if possible.
+     * @param arguments
+     *         values of placeholders.
+     *
+     * @return message object, null if message isn't enabled or can't be used.
+     */
+    @Nullable
+    public ChatMessage prepare(Locale lang, MessageArguments arguments)
+    {
+        ChatTemplate template = this.getTemplate(lang);
+        if (template == null)
+        {
+            return null;
+        }
+        return fill(template, null, arguments);
+    }
+
+    @Override
+    public boolean sendMessage(CommandSender target, Locale lang, MessageData<?>... data)
+    {
+        try (MessageArguments arguments = MessageArguments.acquire())
+        {
+            return this.sendMessage(target, lang, arguments.setAll(data));
+        }
+    }
+
+    /**
+     * Try send this message to given {@link CommandSender}, if message is disabled method will just return false.
+     *
+     * @param target
+     *         target of message.
+     * @param lang
+     *         language to use if possible.
+     * @param arguments
+     *         values of placeholders.
+     *
+     * @return true if message was send.
+     */
+    public boolean sendMessage(CommandSender target, Locale lang, MessageArguments arguments)
+    {
+        ChatMessage message = this.prepare(target, lang, arguments);
+        if (message == null)
+        {
+            return false;
+        }
+        target.sendMessage(message);
+        return true;
+    }
+
+    @Override
+    public boolean broadcastStaticMessage(Locale lang, MessageData<?>... data)
+    {
+        return this.broadcastStaticMessage(this.players.get(), lang, data);
+    }
+
+    @Override
+    public boolean broadcastStaticMessage(Iterable<? extends CommandSender> targets, Locale lang, MessageData<?>... data)
+    {
+        ChatMessage message = this.prepare(lang, data);
+        if (message == null)
+        {
+            return false;
+        }
+        ChatService.getInstance().broadcast(ChatMessageType.SYSTEM, targets, message);
+        return true;
+    }
+
+    @Override
+    public boolean broadcastMessage(Locale lang, MessageData<?>... data)
+    {
+        return this.broadcastMessage(this.players.get(), lang, data);
+    }
+
+    @Override
+    public boolean broadcastMessage(Iterable<? extends CommandSender> targets, Locale lang, MessageData<?>... data)
+    {
+        try (MessageArguments arguments = MessageArguments.acquire())
+        {
+            return this.broadcastMessage(targets, lang, arguments.setAll(data));
+        }
+    }
+
+    /**
+     * Try broadcast this message to selected command senders in target sender language if possible, if message is disabled method will just
+     * return false.
+     *
+     * @param targets
+     *         targets of message.
+     * @param lang
+     *         default language to use if target don't have any.
+     * @param arguments
+     *         values of placeholders.
+     *
+     * @return true if message was send.
+     */
+    public boolean broadcastMessage(Iterable<? extends CommandSender> targets, Locale lang, MessageArguments arguments)
+    {
+        Map<Locale, List<CommandSender>> groups = new HashMap<>(8);
+        for (CommandSender target : targets)
+        {
+            groups.computeIfAbsent(getLocale(target, lang), key -> new ArrayList<>(16)).add(target);
+        }
+        boolean sent = false;
+        for (Map.Entry<Locale, List<CommandSender>> entry : groups.entrySet())
+        {
+            ChatTemplate template = this.getTemplate(entry.getKey());
+            if (template == null)
+            {
+                continue;
+            }
+            sent = true;
+            List<CommandSender> group = entry.getValue();
+            // targets that are not used by template get same message, so group list is reused for them.
+            int shared = 0;
+            for (CommandSender target : group)
+            {
+                if (usesTarget(template, target, arguments))
+                {
+                    target.sendMessage(fill(template, target, arguments));
+                }
+                else
+                {
+                    group.set(shared++, target);
+                }
+            }
+            if (shared != 0)
+            {
+                ChatService.getInstance().broadcast(ChatMessageType.SYSTEM, group.subList(0, shared), fill(template, null, arguments));
+            }
+        }
+        return sent;
+    }
+
+    @Override
+    public boolean broadcastMessage(MessageData<?>... data)
+    {
+        return this.broadcastMessage(this.players.get(), this.defaultLocale, data);
+    }
+
+    @Override
+    public boolean broadcastMessage(Iterable<? extends CommandSender> targets, MessageData<?>... data)
+    {
+        return this.broadcastMessage(targets, this.defaultLocale, data);
+    }
+
+    static Locale getLocale(MessageReceiver receiver, Locale lang)
+    {
+        Locale locale = (receiver instanceof LocalizedMessageReceiver) ? ((LocalizedMessageReceiver) receiver).getPreferredLocale()
+                                                                       : receiver.getOutput().getPreferredLocale();
+        return (locale == null) ? lang : locale;
+    }
+
+    static ChatMessage fill(ChatTemplate template, @Nullable CommandSender target, MessageArguments arguments)
+    {
+        arguments.bind(template, target);
+        return template.fill(arguments);
+    }
+
+    // returns true if template contains placeholder of target that is not replaced by any of arguments.
+    static boolean usesTarget(ChatTemplate template, CommandSender target, MessageArguments arguments)
+    {
+        String key = target.getMessageKey();
+        return (template.getKeyIndex(key) != - 1) && ! arguments.contains(key);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.diorite.chat.ChatTemplate;
+import org.diorite.chat.CompiledParser;
+
+/**
+ * Read only table of messages of single language, with fallback texts already merged into it. <br>
+ * Keys are stored in open addressing hash table with at most half of slots used, texts and templates are stored in arrays at same index as key,
+ * so lookup does not allocate anything and usually checks only one slot.
+ */
+final class LocaleBundle
+{
+    private final Locale   locale;
+    private final int      size;
+    private final int      mask;
+    private final String[] keys;
+    private final String[] texts;
+    // templates are compiled on first use, race only causes same template to be compiled more than once.
+    private final ChatTemplate[] templates;
+
+    LocaleBundle(Locale locale, Map<String, String> texts)
+    {
+        this.locale = locale;
+        this.size = texts.size();
+        int capacity = Integer.highestOneBit(Math.max(this.size, 1) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new String[capacity];
+        this.texts = new String[capacity];
+        this.templates = new ChatTemplate[capacity];
+        for (Map.Entry<String, String> entry : texts.entrySet())
+        {
+            String key = entry.getKey();
+            int index = hash(key) & this.mask;
+            while (this.keys[index] != null)
+            {
+                index = (index + 1) & this.mask;
+            }
+            this.keys[index] = key;
+            this.texts[index] = entry.getValue();
+        }
+    }
+
+    Locale getLocale()
+    {
+        return this.locale;
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+
+    @Nullable
+    String getText(String key)
+    {
+        int index = this.indexOf(key);
+        return (index == - 1) ? null : this.texts[index];
+    }
+
+    @Nullable
+    ChatTemplate getTemplate(String key, CompiledParser compiledParser)
+    {
+        int index = this.indexOf(key);
+        if (index == - 1)
+        {
+            return null;
+        }
+        ChatTemplate template = this.templates[index];
+        if (template == null)
+        {
+            template = ChatTemplate.compile(this.texts[index], compiledParser);
+            this.templates[index] = template;
+        }
+        return template;
+    }
+
+    private int indexOf(String key)
+    {
+        int index = hash(key) & this.mask;
+        String current;
+        while ((current = this.keys[index]) != null)
+        {
+            if (current.equals(key))
+            {
+                return index;
+            }
+            index = (index + 1) & this.mask;
+        }
+        return - 1;
+    }
+
+    // spreads higher bits, as keys often share long common prefixes.
+    private static int hash(String key)
+    {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+
+import org.diorite.chat.ChatMessage;
+import org.diorite.chat.ChatTemplate;
+import org.diorite.sender.CommandSender;
+
+/**
+ * Reusable set of values of message placeholders, with separate slots for primitive values so they are never boxed. <br>
+ * Instances are pooled per thread, use {@link #acquire()} with try-with-resources and do not keep reference to it after closing:
+ * <pre>
+ * try (MessageArguments arguments = MessageArguments.acquire())
+ * {
+ *     message.sendMessage(target, lang, arguments.set("amount", 5).set("item", name));
+ * }
+ * </pre>
+ * When used by template, each argument is mapped once to index of its placeholder, and template reads values by that index.
+ */
+public final class MessageArguments implements ChatTemplate.Values, AutoCloseable
+{
+    /**
+     * Maximum amount of arguments.
+     */
+    public static final int CAPACITY = 16;
+
+    private static final byte TYPE_INT    = 0;
+    private static final byte TYPE_LONG   = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_OBJECT = 3;
+
+    // additional slot used for target of message, so it never takes place of arguments.
+    private static final int TARGET_SLOT = CAPACITY;
+
+    private static final ThreadLocal<MessageArguments> POOL = ThreadLocal.withInitial(() -> new MessageArguments(true));
+
+    private final String[] keys    = new String[CAPACITY + 1];
+    private final byte[]   types   = new byte[CAPACITY + 1];
+    private final long[]   numbers = new long[CAPACITY + 1];
+    private final Object[] objects = new Object[CAPACITY + 1];
+    private       int      size;
+
+    // slot of each placeholder of currently bound template, or -1 if there is no value for it.
+    private int[] slots = new int[CAPACITY];
+    private int   boundSize;
+
+    private final boolean pooled;
+    private       boolean used;
+
+    private MessageArguments(boolean pooled)
+    {
+        this.pooled = pooled;
+    }
+
+    /**
+     * Returns empty arguments object, pooled instance of current thread is returned if it is not used already.
+     *
+     * @return empty arguments.
+     */
+    public static MessageArguments acquire()
+    {
+        MessageArguments arguments = POOL.get();
+        if (arguments.used)
+        {
+            return new MessageArguments(false);
+        }
+        arguments.used = true;
+        return arguments;
+    }
+
+    /**
+     * Set int value of given placeholder.
+     *
+     * @param key
+     *         key of placeholder.
+     * @param value
+     *         value of placeholder.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are already {@link #CAPACITY} arguments.
+     */
+    public MessageArguments set(String key, int value)
+    {
+        int slot = this.slotOf(key);
+        this.types[slot] = TYPE_INT;
+        this.numbers[slot] = value;
+        return this;
+    }
+
+    /**
+     * Set long value of given placeholder.
+     *
+     * @param key
+     *         key of placeholder.
+     * @param value
+     *         value of placeholder.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are already {@link #CAPACITY} arguments.
+     */
+    public MessageArguments set(String key, long value)
+    {
+        int slot = this.slotOf(key);
+        this.types[slot] = TYPE_LONG;
+        this.numbers[slot] = value;
+        return this;
+    }
+
+    /**
+     * Set double value of given placeholder.
+     *
+     * @param key
+     *         key of placeholder.
+     * @param value
+     *         value of placeholder.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are already {@link #CAPACITY} arguments.
+     */
+    public MessageArguments set(String key, double value)
+    {
+        int slot = this.slotOf(key);
+        this.types[slot] = TYPE_DOUBLE;
+        this.numbers[slot] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    /**
+     * Set value of given placeholder, {@link ChatMessage} values are inserted to text as components and {@link CommandSender} values are
+     * replaced by name of sender. Null value leaves placeholder unchanged.
+     *
+     * @param key
+     *         key of placeholder.
+     * @param value
+     *         value of placeholder.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are already {@link #CAPACITY} arguments.
+     */
+    public MessageArguments set(String key, @Nullable Object value)
+    {
+        int slot = this.slotOf(key);
+        this.types[slot] = TYPE_OBJECT;
+        this.objects[slot] = value;
+        return this;
+    }
+
+    /**
+     * Set value of placeholder from given message data.
+     *
+     * @param data
+     *         placeholder object to use.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are already {@link #CAPACITY} arguments.
+     */
+    public MessageArguments set(MessageData<?> data)
+    {
+        return this.set(data.getMessageKey(), data.getMessageValue());
+    }
+
+    /**
+     * Set values of placeholders from given message data.
+     *
+     * @param data
+     *         placeholder objects to use.
+     *
+     * @return this same object.
+     *
+     * @throws IllegalStateException
+     *         if there are more than {@link #CAPACITY} arguments.
+     */
+    public MessageArguments setAll(MessageData<?>... data)
+    {
+        for (MessageData<?> messageData : data)
+        {
+            this.set(messageData);
+        }
+        return this;
+    }
+
+    /**
+     * Returns true if there is value for given placeholder.
+     *
+     * @param key
+     *         key of placeholder.
+     *
+     * @return true if there is value for given placeholder.
+     */
+    public boolean contains(String key)
+    {
+        return this.indexOf(key) != - 1;
+    }
+
+    /**
+     * Returns amount of arguments.
+     *
+     * @return amount of arguments.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Remove all arguments.
+     */
+    public void clear()
+    {
+        Arrays.fill(this.keys, null);
+        Arrays.fill(this.objects, null);
+        this.size = 0;
+        this.boundSize = 0;
+    }
+
+    /**
+     * Remove all arguments and return this object to pool, it should not be used after this method.
+     */
+    @Override
+    public void close()
+    {
+        this.clear();
+        if (this.pooled)
+        {
+            this.used = false;
+        }
+    }
+
+    private int indexOf(String key)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            if (key.equals(this.keys[i]))
+            {
+                return i;
+            }
+        }
+        return - 1;
+    }
+
+    private int slotOf(String key)
+    {
+        int slot = this.indexOf(key);
+        if (slot != - 1)
+        {
+            this.objects[slot] = null;
+            return slot;
+        }
+        if (this.size == CAPACITY)
+        {
+            throw new IllegalStateException("Too many message arguments, limit: " + CAPACITY);
+        }
+        slot = this.size++;
+        this.keys[slot] = key;
+        return slot;
+    }
+
+    /**
+     * Map arguments to placeholders of given template, target of message is used for placeholder of its own key unless there is argument for
+     * it.
+     *
+     * @param template
+     *         template to use.
+     * @param target
+     *         target of message.
+     */
+    void bind(ChatTemplate template, @Nullable MessageData<?> target)
+    {
+        int count = template.getKeyCount();
+        if (this.slots.length < count)
+        {
+            this.slots = new int[count];
+        }
+        Arrays.fill(this.slots, 0, count, - 1);
+        this.boundSize = count;
+        if (target != null)
+        {
+            this.keys[TARGET_SLOT] = target.getMessageKey();
+            this.types[TARGET_SLOT] = TYPE_OBJECT;
+            this.objects[TARGET_SLOT] = target.getMessageValue();
+            this.map(template, TARGET_SLOT);
+        }
+        for (int i = 0; i < this.size; i++)
+        {
+            this.map(template, i);
+        }
+    }
+
+    private void map(ChatTemplate template, int slot)
+    {
+        int index = template.getKeyIndex(this.keys[slot]);
+        if (index != - 1)
+        {
+            this.slots[index] = slot;
+        }
+    }
+
+    private int boundSlot(int index)
+    {
+        if (index >= this.boundSize)
+        {
+            return - 1;
+        }
+        int slot = this.slots[index];
+        if ((slot != - 1) && (this.types[slot] == TYPE_OBJECT) && (this.objects[slot] == null))
+        {
+            return - 1;
+        }
+        return slot;
+    }
+
+    @Nullable
+    @Override
+    public ChatMessage getMessage(int index)
+    {
+        int slot = this.boundSlot(index);
+        if ((slot == - 1) || (this.types[slot] != TYPE_OBJECT))
+        {
+            return null;
+        }
+        Object value = this.objects[slot];
+        return (value instanceof ChatMessage) ? (ChatMessage) value : null;
+    }
+
+    @Nullable
+    @Override
+    public String getText(int index)
+    {
+        int slot = this.boundSlot(index);
+        if (slot == - 1)
+        {
+            return null;
+        }
+        switch (this.types[slot])
+        {
+            case TYPE_INT:
+                return Integer.toString((int) this.numbers[slot]);
+            case TYPE_LONG:
+                return Long.toString(this.numbers[slot]);
+            case TYPE_DOUBLE:
+                return Double.toString(Double.longBitsToDouble(this.numbers[slot]));
+            default:
+                return toText(this.objects[slot]);
+        }
+    }
+
+    @Override
+    public boolean appendText(int index, StringBuilder builder)
+    {
+        int slot = this.boundSlot(index);
+        return (slot != - 1) && this.appendSlot(slot, builder);
+    }
+
+    private static String toText(Object value)
+    {
+        if (value instanceof CommandSender)
+        {
+            return ((CommandSender) value).getName();
+        }
+        if (value instanceof ChatMessage)
+        {
+            return ((ChatMessage) value).toPlainText();
+        }
+        return value.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(64).append("MessageArguments{");
+        for (int i = 0; i < this.size; i++)
+        {
+            if (i != 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(this.keys[i]).append('=');
+            if (! this.appendSlot(i, sb))
+            {
+                sb.append("null");
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private boolean appendSlot(int slot, StringBuilder sb)
+    {
+        switch (this.types[slot])
+        {
+            case TYPE_INT:
+                sb.append((int) this.numbers[slot]);
+                return true;
+            case TYPE_LONG:
+                sb.append(this.numbers[slot]);
+                return true;
+            case TYPE_DOUBLE:
+                sb.append(Double.longBitsToDouble(this.numbers[slot]));
+                return true;
+            default:
+                Object value = this.objects[slot];
+                if (value == null)
+                {
+                    return false;
+                }
+                sb.append(toText(value));
+                return true;
+        }
+    }
+}
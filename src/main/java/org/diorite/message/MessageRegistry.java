@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.diorite.chat.ChatTemplate;
+import org.diorite.chat.CompiledParser;
+import org.diorite.chat.MessageReceiver;
+import org.diorite.sender.CommandSender;
+
+/**
+ * Registry of messages of all languages, bundle of language is loaded on first use. <br>
+ * Each loaded bundle already contains texts of fallback languages, in order: exact locale, locale with only same language and default locale,
+ * so lookup of message never has to check more than one bundle. Bundles of languages not used by anyone can be evicted by
+ * {@link #evictUnused(Iterable)}, they will be loaded again when needed.
+ */
+public class MessageRegistry
+{
+    private final Function<? super Locale, ? extends Map<String, String>> loader;
+    private final Locale                                                  defaultLocale;
+    private final CompiledParser                                          compiledParser;
+    final         Supplier<? extends Iterable<? extends CommandSender>>   players;
+    private final Map<Locale, LocaleBundle>                               bundles = new ConcurrentHashMap<>(8);
+
+    /**
+     * Construct new message registry.
+     *
+     * @param loader
+     *         function that loads texts of messages of given language by message key, may return null if there are no texts for that
+     *         language.
+     * @param defaultLocale
+     *         language used when there is no text for requested one.
+     * @param compiledParser
+     *         parser used to compile texts.
+     * @param players
+     *         supplier of all players, used by broadcast methods without explicit targets and by {@link #evictUnused()}.
+     */
+    public MessageRegistry(Function<? super Locale, ? extends Map<String, String>> loader, Locale defaultLocale, CompiledParser compiledParser,
+                           Supplier<? extends Iterable<? extends CommandSender>> players)
+    {
+        this.loader = loader;
+        this.defaultLocale = defaultLocale;
+        this.compiledParser = compiledParser;
+        this.players = players;
+    }
+
+    /**
+     * Returns language used when there is no text for requested one.
+     *
+     * @return default language.
+     */
+    public Locale getDefaultLocale()
+    {
+        return this.defaultLocale;
+    }
+
+    /**
+     * Returns message of given key, message does not need to exist yet, it is resolved each time it is used.
+     *
+     * @param key
+     *         key of message.
+     *
+     * @return message of given key.
+     */
+    public AbstractTemplateMessage getMessage(String key)
+    {
+        return new RegistryMessage(this, key);
+    }
+
+    /**
+     * Returns text of message of given key in given language, or null if there is no such message in given language or its fallbacks.
+     *
+     * @param lang
+     *         language of message.
+     * @param key
+     *         key of message.
+     *
+     * @return text of message.
+     */
+    @Nullable
+    public String getText(Locale lang, String key)
+    {
+        return this.getBundle(lang).getText(key);
+    }
+
+    /**
+     * Returns compiled template of message of given key in given language, or null if there is no such message in given language or its
+     * fallbacks.
+     *
+     * @param lang
+     *         language of message.
+     * @param key
+     *         key of message.
+     *
+     * @return compiled template of message.
+     */
+    @Nullable
+    public ChatTemplate getTemplate(Locale lang, String key)
+    {
+        return this.getBundle(lang).getTemplate(key, this.compiledParser);
+    }
+
+    /**
+     * Returns languages with currently loaded bundles.
+     *
+     * @return loaded languages.
+     */
+    public Set<Locale> getLoadedLocales()
+    {
+        return Collections.unmodifiableSet(new HashSet<>(this.bundles.keySet()));
+    }
+
+    /**
+     * Remove loaded bundle of given language, it will be loaded again on next use.
+     *
+     * @param lang
+     *         language to evict.
+     *
+     * @return true if bundle was loaded.
+     */
+    public boolean evict(Locale lang)
+    {
+        return this.bundles.remove(lang) != null;
+    }
+
+    /**
+     * Remove all loaded bundles, so they will be loaded again on next use.
+     */
+    public void evictAll()
+    {
+        this.bundles.clear();
+    }
+
+    /**
+     * Remove loaded bundles of languages not used by any of online players, bundle of default language is always kept.
+     *
+     * @return amount of removed bundles.
+     */
+    public int evictUnused()
+    {
+        return this.evictUnused(this.players.get());
+    }
+
+    /**
+     * Remove loaded bundles of languages not used by any of given receivers, bundle of default language is always kept.
+     *
+     * @param online
+     *         receivers that are still online.
+     *
+     * @return amount of removed bundles.
+     */
+    public int evictUnused(Iterable<? extends MessageReceiver> online)
+    {
+        Set<Locale> used = new HashSet<>(8);
+        used.add(this.defaultLocale);
+        for (MessageReceiver receiver : online)
+        {
+            used.add(AbstractTemplateMessage.getLocale(receiver, this.defaultLocale));
+        }
+        int evicted = 0;
+        for (Locale locale : this.bundles.keySet())
+        {
+            if (! used.contains(locale) && (this.bundles.remove(locale) != null))
+            {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    LocaleBundle getBundle(Locale lang)
+    {
+        LocaleBundle bundle = this.bundles.get(lang);
+        if (bundle != null)
+        {
+            return bundle;
+        }
+        return this.bundles.computeIfAbsent(lang, this::load);
+    }
+
+    private LocaleBundle load(Locale lang)
+    {
+        // texts of more specific language override fallback ones.
+        Map<String, String> texts = new HashMap<>(64);
+        this.loadTexts(this.defaultLocale, texts);
+        Locale language = new Locale(lang.getLanguage());
+        if (! language.equals(lang) && ! language.equals(this.defaultLocale))
+        {
+            this.loadTexts(language, texts);
+        }
+        if (! lang.equals(this.defaultLocale))
+        {
+            this.loadTexts(lang, texts);
+        }
+        return new LocaleBundle(lang, texts);
+    }
+
+    private void loadTexts(Locale lang, Map<String, String> texts)
+    {
+        Map<String, String> loaded = this.loader.apply(lang);
+        if (loaded != null)
+        {
+            texts.putAll(loaded);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MessageRegistry{defaultLocale=" + this.defaultLocale + ", loadedLocales=" + this.bundles.keySet() + "}";
+    }
+}
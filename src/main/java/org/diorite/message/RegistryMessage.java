@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.Locale;
+
+import org.diorite.chat.ChatTemplate;
+
+/**
+ * Message that looks up its template in {@link MessageRegistry} each time, so it follows reloaded and evicted languages.
+ */
+class RegistryMessage extends AbstractTemplateMessage
+{
+    private final MessageRegistry registry;
+    private final String          key;
+
+    RegistryMessage(MessageRegistry registry, String key)
+    {
+        super(registry.getDefaultLocale(), registry.players);
+        this.registry = registry;
+        this.key = key;
+    }
+
+    @Nullable
+    @Override
+    public ChatTemplate getTemplate(Locale lang)
+    {
+        return this.registry.getTemplate(lang, this.key);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RegistryMessage{key=" + this.key + "}";
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.message;
+
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.diorite.chat.ChatTemplate;
+import org.diorite.chat.CompiledParser;
+import org.diorite.sender.CommandSender;
+
+/**
+ * {@link Message} backed by markup texts compiled to {@link ChatTemplate} lazily, once per language. <br>
+ * Text for language is selected from exact locale, then locale with only same language, and then default locale.
+ *
+ * @see AbstractTemplateMessage
+ */
+public class TemplateMessage extends AbstractTemplateMessage
+{
+    private final Map<Locale, String>       texts;
+    private final CompiledParser            compiledParser;
+    private final Map<Locale, ChatTemplate> templates = new ConcurrentHashMap<>(4);
+
+    /**
+     * Construct new template message.
+     *
+     * @param texts
+     *         markup texts of message by language.
+     * @param defaultLocale
+     *         language used when there is no text for requested one.
+     * @param compiledParser
+     *         parser used to compile texts.
+     * @param players
+     *         supplier of all players, used by broadcast methods without explicit targets.
+     */
+    public TemplateMessage(Map<Locale, String> texts, Locale defaultLocale, CompiledParser compiledParser,
+                           Supplier<? extends Iterable<? extends CommandSender>> players)
+    {
+        super(defaultLocale, players);
+        this.texts = Collections.unmodifiableMap(new HashMap<>(texts));
+        this.compiledParser = compiledParser;
+    }
+
+    /**
+     * Returns markup texts of message by language.
+     *
+     * @return markup texts of message.
+     */
+    public Map<Locale, String> getTexts()
+    {
+        return this.texts;
+    }
+
+    @Nullable
+    @Override
+    public ChatTemplate getTemplate(Locale lang)
+    {
+        ChatTemplate template = this.templates.get(lang);
+        if (template != null)
+        {
+            return template;
+        }
+        Locale locale = this.resolveLocale(lang);
+        if (locale == null)
+        {
+            return null;
+        }
+        // template is shared by all languages that resolve to same text.
+        template = this.templates.computeIfAbsent(locale, key -> ChatTemplate.compile(this.texts.get(key), this.compiledParser));
+        this.templates.putIfAbsent(lang, template);
+        return template;
+    }
+
+    @Nullable
+    private Locale resolveLocale(Locale lang)
+    {
+        if (this.texts.containsKey(lang))
+        {
+            return lang;
+        }
+        Locale language = new Locale(lang.getLanguage());
+        if (this.texts.containsKey(language))
+        {
+            return language;
+        }
+        return this.texts.containsKey(this.defaultLocale) ? this.defaultLocale : null;
+    }
+}
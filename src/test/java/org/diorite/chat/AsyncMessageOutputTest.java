@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncMessageOutputTest
+{
+    private final Queue<Runnable> tasks    = new ArrayDeque<>();
+    private final List<String>    received = new ArrayList<>();
+
+    @Test
+    public void coalescedMessageIsDeliveredLastTest()
+    {
+        AsyncMessageOutput output = this.createOutput(AsyncMessageOutput.OverflowPolicy.COALESCE);
+        this.send(output, "A1");
+        this.send(output, "A2");
+        this.send(output, "C");
+        this.runTask();
+        this.send(output, "M");
+        this.runAll();
+        Assert.assertEquals(Arrays.asList("A1", "A2", "M"), this.received);
+        Assert.assertEquals(1, output.getDroppedCount());
+    }
+
+    @Test
+    public void messagesAreQueuedAgainAfterCoalescedMessageIsSentTest()
+    {
+        AsyncMessageOutput output = this.createOutput(AsyncMessageOutput.OverflowPolicy.COALESCE);
+        this.send(output, "A1");
+        this.send(output, "A2");
+        this.send(output, "C");
+        this.runAll();
+        this.send(output, "B1");
+        this.send(output, "B2");
+        this.runAll();
+        Assert.assertEquals(Arrays.asList("A1", "A2", "C", "B1", "B2"), this.received);
+        Assert.assertEquals(0, output.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewestTest()
+    {
+        AsyncMessageOutput output = this.createOutput(AsyncMessageOutput.OverflowPolicy.DROP_NEWEST);
+        this.send(output, "A1");
+        this.send(output, "A2");
+        this.send(output, "C");
+        this.runTask();
+        this.send(output, "M");
+        this.runAll();
+        Assert.assertEquals(Arrays.asList("A1", "A2", "M"), this.received);
+        Assert.assertEquals(1, output.getDroppedCount());
+    }
+
+    private AsyncMessageOutput createOutput(AsyncMessageOutput.OverflowPolicy policy)
+    {
+        return new AsyncMessageOutput((type, message, payload) -> this.received.add(message.toPlainText()), ChatMessageFormat.JSON,
+                                      this.tasks::add, 2, 1, policy, null);
+    }
+
+    private void send(AsyncMessageOutput output, String text)
+    {
+        output.sendMessage(ChatMessageType.ACTION, ChatMessage.fromLegacy(text));
+    }
+
+    private void runTask()
+    {
+        Runnable task = this.tasks.poll();
+        Assert.assertNotNull(task);
+        task.run();
+    }
+
+    private void runAll()
+    {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null)
+        {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChatMessageCacheTest
+{
+    @Test
+    public void legacyTextOfChildIsInvalidatedByParentStyleTest()
+    {
+        String json = "{\"text\":\"\",\"color\":\"red\",\"extra\":[{\"text\":\"a\",\"extra\":[\"child\"]}]}";
+        ChatMessageImpl root = (ChatMessageImpl) ChatMessage.fromJson(json);
+        ChatMessageImpl child = root.getExtra().get(0).getExtra().get(0);
+        Assert.assertEquals("\u00a7cchild", legacy(child));
+        root.setColor(ChatColor.DARK_GREEN);
+        Assert.assertEquals("\u00a72child", legacy(child));
+        root.getExtra().get(0).setBold(true);
+        Assert.assertEquals("\u00a72\u00a7lchild", legacy(child));
+    }
+
+    @Test
+    public void concurrentSerializationKeepsSingleValueTest() throws Exception
+    {
+        int threads = 4;
+        ChatMessage message = ChatMessage.fromJson("{\"text\":\"a\"}");
+        // each serializer waits for all others, so every thread misses cache.
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+            {
+                results.add(executor.submit(() -> message.getSerialized("flavor", m -> {
+                    try
+                    {
+                        barrier.await();
+                    }
+                    catch (Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                    return new Object();
+                })));
+            }
+            Object first = results.get(0).get();
+            for (Future<Object> result : results)
+            {
+                Assert.assertSame(first, result.get());
+            }
+            Assert.assertSame(first, message.getSerialized("flavor", m -> new Object()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static String legacy(ChatMessage message)
+    {
+        return new String(ChatMessageFormat.LEGACY.serialize(message), StandardCharsets.UTF_8);
+    }
+}
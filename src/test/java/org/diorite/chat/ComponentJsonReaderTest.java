@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComponentJsonReaderTest
+{
+    @Test
+    public void primitiveMessageTest()
+    {
+        Assert.assertEquals("{\"text\":\"true\"}", ChatMessage.fromJson("true").toJson());
+        Assert.assertEquals("{\"text\":\"false\"}", ChatMessage.fromJson("false").toJson());
+        Assert.assertEquals("{\"text\":\"1\"}", ChatMessage.fromJson("1").toJson());
+        Assert.assertEquals("{\"text\":\"s\"}", ChatMessage.fromJson("\"s\"").toJson());
+    }
+
+    @Test
+    public void primitiveTranslationArgumentsTest()
+    {
+        Assert.assertEquals("{\"translate\":\"x\",\"with\":[\"true\",\"1\",\"s\"]}",
+                            ChatMessage.fromJson("{\"translate\":\"x\",\"with\":[true,1,\"s\"]}").toJson());
+    }
+
+    @Test
+    public void primitiveArrayElementsTest()
+    {
+        Assert.assertEquals("{\"text\":\"a\",\"extra\":[{\"text\":\"true\"},{\"text\":\"2\"}]}", ChatMessage.fromJson("[\"a\",true,2]").toJson());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IncrementalParserTest
+{
+    private static final ParserSettings NO_OPTIMIZER = ParserSettings.builder().withoutOptimizer().build();
+
+    private static final String[] TOKENS = {"a", "b", " ", "*", "_", "/", "~", "%", "&a", "&l", "&r", "&", "[", "]", "(/cmd)", "(?ins)", "(5)",
+                                            "(http://x.com)", "\\", "http://y.org ", "**"};
+
+    @Test
+    public void editAfterFailedEditTest()
+    {
+        IncrementalParser parser = new IncrementalParser("//&l &", NO_OPTIMIZER);
+        this.assertFailedEdit(parser, 3, 0, "]");
+        parser.edit(6, 0, "a");
+        this.assertParsed(parser, NO_OPTIMIZER);
+    }
+
+    @Test
+    public void appendAfterFailedEditTest()
+    {
+        IncrementalParser parser = new IncrementalParser("___b&r&l", NO_OPTIMIZER);
+        this.assertFailedEdit(parser, 6, 0, "]");
+        parser.edit(parser.getText().length(), 0, "a");
+        this.assertParsed(parser, NO_OPTIMIZER);
+    }
+
+    @Test
+    public void randomEditsTest()
+    {
+        Random random = new Random(17);
+        for (ParserSettings settings : new ParserSettings[]{NO_OPTIMIZER, ParserSettings.ALL_ALLOWED})
+        {
+            for (int i = 0; i < 2000; i++)
+            {
+                IncrementalParser parser;
+                try
+                {
+                    parser = new IncrementalParser(randomText(random, random.nextInt(30)), settings);
+                }
+                catch (RuntimeException | StackOverflowError e)
+                {
+                    continue; // text that can't be parsed at all.
+                }
+                for (int j = 0; j < 8; j++)
+                {
+                    String text = parser.getText();
+                    int offset = random.nextInt(text.length() + 1);
+                    int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+                    String inserted = randomText(random, random.nextInt(3));
+                    try
+                    {
+                        parser.edit(offset, removed, inserted);
+                    }
+                    catch (RuntimeException | StackOverflowError e)
+                    {
+                        Assert.assertEquals(text, parser.getText());
+                        continue; // failed edit must not break next ones.
+                    }
+                    this.assertParsed(parser, settings);
+                }
+            }
+        }
+    }
+
+    private void assertFailedEdit(IncrementalParser parser, int offset, int removedLength, String inserted)
+    {
+        String text = parser.getText();
+        try
+        {
+            parser.edit(offset, removedLength, inserted);
+            Assert.fail("Edit should fail");
+        }
+        catch (RuntimeException | StackOverflowError e)
+        {
+            Assert.assertEquals(text, parser.getText());
+        }
+    }
+
+    private void assertParsed(IncrementalParser parser, ParserSettings settings)
+    {
+        Assert.assertEquals(parser.getText(), CompiledParser.of(settings).parse(parser.getText()), parser.toJson());
+    }
+
+    private static String randomText(Random random, int tokens)
+    {
+        StringBuilder sb = new StringBuilder(tokens * 2);
+        for (int i = 0; i < tokens; i++)
+        {
+            sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return sb.toString();
+    }
+}
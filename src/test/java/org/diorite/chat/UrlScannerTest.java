@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017. Diorite (by Bartłomiej Mazur (aka GotoFinal))
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.diorite.chat;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UrlScannerTest
+{
+    // regular expression used by parser before UrlScanner, with its original flags.
+    private static final Pattern URL_PATTERN = Pattern.compile(
+            "(?:(?:https?)://)?(?:\\S+(?::\\S*)?@)?(?:(?!10(?:\\.\\d{1,3}){3})(?!127(?:\\.\\d{1,3}){3})(?!169\\.254(?:\\.\\d{1,3}){2})(?!192\\.168(?:\\" +
+            ".\\d{1,3}){2})(?!172\\.(?:1[6-9]|2\\d|3[0-1])(?:\\.\\d{1,3}){2})(?:[1-9]\\d?|1\\d\\d|2[01]\\d|22[0-3])(?:\\.(?:1?\\d{1,2}|2[0-4]\\d|25[0-5])){2}" +
+            "(?:\\.(?:[1-9]\\d?|1\\d\\d|2[0-4]\\d|25[0-4]))|(?:(?:[a-z\\x{00a1}-\\x{ffff}0-9]+-?)*[a-z\\x{00a1}-\\x{ffff}0-9]+)(?:\\." +
+            "(?:[a-z\\x{00a1}-\\x{ffff}0-9]+-?)*[a-z\\x{00a1}-\\x{ffff}0-9]+)*(?:\\.(?:[a-z\\x{00a1}-\\x{ffff}]{2,})))(?::\\d{2,5})?(?:/[^\\s]*)?",
+            Pattern.UNICODE_CASE & Pattern.CASE_INSENSITIVE);
+
+    private static final String[] TOKENS = {"a", "b", "z", "A", "0", "1", "9", "-", ".", "..", ":", "@", "/", " ", "\u00a0", "http://", "\u00e9",
+                                            "\ud83d\ude00", "\ud83d", "\ude00", "com", "x.y", "10.0.0.1", "8.8.8.8"};
+
+    @Test
+    public void supplementaryCharactersTest()
+    {
+        this.assertSameLinks("\ud83d\ude00.com hi");
+        this.assertSameLinks("foo.b\ud83d\ude00r");
+        this.assertSameLinks("check\ud83d\ude00google.com");
+        this.assertSameLinks("x\ud83d\ude00.ab.com");
+        this.assertSameLinks("a\ud83d.com");
+        this.assertSameLinks("\ude00b.com");
+    }
+
+    @Test
+    public void randomTextTest()
+    {
+        Random random = new Random(4);
+        for (int i = 0; i < 50000; i++)
+        {
+            StringBuilder builder = new StringBuilder();
+            for (int j = random.nextInt(12); j >= 0; j--)
+            {
+                builder.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            this.assertSameLinks(builder.toString());
+        }
+    }
+
+    private void assertSameLinks(String text)
+    {
+        StringBuilder expected = new StringBuilder();
+        try
+        {
+            Matcher matcher = URL_PATTERN.matcher(text);
+            while (matcher.find())
+            {
+                expected.append(matcher.start()).append('-').append(matcher.end()).append(' ');
+            }
+        }
+        catch (StackOverflowError e)
+        {
+            return; // regex could not check this text at all.
+        }
+        StringBuilder actual = new StringBuilder();
+        UrlScanner scanner = new UrlScanner(text);
+        while (scanner.find())
+        {
+            actual.append(scanner.start()).append('-').append(scanner.end()).append(' ');
+        }
+        Assert.assertEquals(text, expected.toString(), actual.toString());
+    }
+}